@@ -0,0 +1,48 @@
+package qconf;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Runs the benchmarks once for each of a list of thread counts, with the GC profiler enabled (reporting allocation
+ * rates) and the results written as JSON, one file per thread count, so that they can be compared between releases.
+ * <p>
+ * The thread counts are read from the property qconf.threads (default "1,2,4,8") and the results are written to the
+ * directory given by qconf.resultDir (default target/jmh). All arguments are passed on to JMH, so for instance a
+ * regular expression selects the benchmarks to run, and -p size=1024 restricts the payload sizes.
+ *
+ * @author Gabriel Skoglund
+ */
+public class BenchmarkSuite {
+
+    public static void main(String[] args) throws CommandLineOptionException, RunnerException, IOException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        int[] threads = Arrays.stream(System.getProperty("qconf.threads", "1,2,4,8").split(","))
+                              .mapToInt(s -> Integer.parseInt(s.trim()))
+                              .toArray();
+        Path resultDir = Path.of(System.getProperty("qconf.resultDir", "target/jmh"));
+        Files.createDirectories(resultDir);
+
+        for (int t : threads) {
+            Options options = new OptionsBuilder()
+                    .parent(commandLine)
+                    .threads(t)
+                    .addProfiler(GCProfiler.class)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(resultDir.resolve("threads-" + t + ".json").toString())
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package qconf.ciphers.aes128;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigInteger;
+import java.util.HexFormat;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encryption and decryption throughput of the AES-128 modes of operation through their public byte array API,
+ * for payloads from a single block up to 64 MB. The state is per thread, so the benchmark can be run with any
+ * number of threads (see BenchmarkSuite).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AES128Benchmark {
+
+    @Param({"ECB", "CBC", "CTR"})
+    public String mode;
+
+    /** Payload size in bytes */
+    @Param({"16", "1024", "65536", "1048576", "67108864"})
+    public int size;
+
+    private AES128BlockMode blockCipher;
+    private AES128StreamMode streamCipher;
+    private byte[] plaintext;
+    private byte[] ciphertext;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Key key = new Key(HexFormat.of().parseHex("2b7e151628aed2a6abf7158809cf4f3c"));
+        byte[] iv = HexFormat.of().parseHex("000102030405060708090a0b0c0d0e0f");
+        switch (mode) {
+            case "ECB" -> blockCipher = new AES128ECB(key);
+            case "CBC" -> blockCipher = new AES128CBC(key, iv);
+            case "CTR" -> streamCipher = new AES128CTR(key, new AES128CTR.Counter(new BigInteger(iv)));
+            default -> throw new IllegalArgumentException("Unknown mode " + mode);
+        }
+        plaintext = new byte[size];
+        new Random(42).nextBytes(plaintext);
+        ciphertext = encrypt();
+    }
+
+    @Benchmark
+    public byte[] encrypt() throws AES128BlockMode.InvalidInputLengthException {
+        return blockCipher != null ? blockCipher.encrypt(plaintext) : streamCipher.encrypt(plaintext);
+    }
+
+    @Benchmark
+    public byte[] decrypt() throws AES128BlockMode.InvalidInputLengthException {
+        return blockCipher != null ? blockCipher.decrypt(ciphertext) : streamCipher.decrypt(ciphertext);
+    }
+}
@@ -0,0 +1,83 @@
+package qconf.ciphers.aes128;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HexFormat;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Contention when many threads encrypt with the same key, each message with its own IV: a shared
+ * {@link AES128Context}, a new cipher instance (and key expansion) per message, and a single cipher instance guarded
+ * by a lock. Run with JMH's -t option, or for 1 to 64 threads with BenchmarkSuite and
+ * -Dqconf.threads=1,2,4,8,16,32,64.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AES128ContextBenchmark {
+
+    /** The key and the ciphers shared by all threads */
+    @State(Scope.Benchmark)
+    public static class Shared {
+        Key key;
+        AES128Context context;
+        AES128CBC lockedCipher;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            key = new Key(HexFormat.of().parseHex("2b7e151628aed2a6abf7158809cf4f3c"));
+            context = new AES128Context(key);
+            lockedCipher = new AES128CBC(key, new byte[AES128.BLOCK_SZ]);
+        }
+    }
+
+    /** The message of each thread */
+    @State(Scope.Thread)
+    public static class Message {
+        /** Payload size in bytes */
+        @Param({"64", "1024"})
+        public int size;
+
+        byte[] iv = new byte[AES128.BLOCK_SZ];
+        byte[] plaintext;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            Random random = new Random();
+            random.nextBytes(iv);
+            plaintext = new byte[size];
+            random.nextBytes(plaintext);
+        }
+    }
+
+    @Benchmark
+    public byte[] sharedContext(Shared shared, Message message) throws Exception {
+        return shared.context.encryptCBC(message.iv, message.plaintext);
+    }
+
+    @Benchmark
+    public byte[] cipherPerMessage(Shared shared, Message message) throws Exception {
+        return new AES128CBC(shared.key, message.iv).encrypt(message.plaintext);
+    }
+
+    @Benchmark
+    public byte[] lockedCipher(Shared shared, Message message) throws Exception {
+        synchronized (shared.lockedCipher) {
+            return shared.lockedCipher.setInitializationVector(message.iv).encrypt(message.plaintext);
+        }
+    }
+}
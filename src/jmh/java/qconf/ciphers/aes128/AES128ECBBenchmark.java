@@ -0,0 +1,70 @@
+package qconf.ciphers.aes128;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HexFormat;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bulk ECB encryption of independent blocks, showing how the parallel mode scales with the number of threads.
+ * The serial batch API is included as a baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AES128ECBBenchmark {
+
+    /** Number of 16 byte blocks, e.g. identifiers, to encrypt per operation */
+    @Param({"1048576"})
+    public int blocks;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    private AES128ECB cipher;
+    private ForkJoinPool pool;
+    private byte[] plaintext;
+    private byte[] output;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Key.InvalidKeyException {
+        cipher = new AES128ECB(new Key(HexFormat.of().parseHex("2b7e151628aed2a6abf7158809cf4f3c")));
+        pool = new ForkJoinPool(threads);
+        plaintext = new byte[blocks * AES128.BLOCK_SZ];
+        output = new byte[plaintext.length];
+        new Random(42).nextBytes(plaintext);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public byte[] batch() {
+        cipher.encryptBlocks(plaintext, 0, output, 0, blocks);
+        return output;
+    }
+
+    @Benchmark
+    public byte[] parallel() throws AES128BlockMode.InvalidInputLengthException {
+        return cipher.encryptParallel(plaintext, pool);
+    }
+}
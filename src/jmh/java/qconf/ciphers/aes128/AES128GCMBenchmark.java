@@ -0,0 +1,67 @@
+package qconf.ciphers.aes128;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import qconf.hashes.Digest;
+import qconf.hashes.SHA256;
+import qconf.mac.HMAC;
+
+import java.math.BigInteger;
+import java.util.HexFormat;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Authenticated encryption throughput: AES-128 GCM in a single pass, compared to encrypting with AES-128 CTR and
+ * then computing HMAC-SHA256 of the ciphertext in a second pass. The HMAC key is prepared once, so only the cost
+ * per message is measured for both.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AES128GCMBenchmark {
+
+    /** Payload size in bytes */
+    @Param({"64", "1024", "65536", "1048576"})
+    public int size;
+
+    private final byte[] nonce = new byte[AES128GCM.NONCE_LENGTH];
+    private final byte[] aad = new byte[0];
+    private AES128GCM gcm;
+    private AES128CTR ctr;
+    private HMAC.Keyed hmac;
+    private byte[] plaintext;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Key key = new Key(HexFormat.of().parseHex("2b7e151628aed2a6abf7158809cf4f3c"));
+        gcm = new AES128GCM(key);
+        ctr = new AES128CTR(key, new AES128CTR.Counter(BigInteger.ONE));
+        hmac = new HMAC<>(SHA256::new).withKey(new byte[32]);
+        plaintext = new byte[size];
+        new Random(42).nextBytes(plaintext);
+    }
+
+    @Benchmark
+    public byte[] gcm() throws AES128GCM.InvalidNonceLengthException {
+        return gcm.encrypt(nonce, aad, plaintext);
+    }
+
+    @Benchmark
+    public Digest ctrThenHmacSha256() {
+        return hmac.digest(ctr.encrypt(plaintext));
+    }
+}
@@ -0,0 +1,52 @@
+package qconf.ciphers.aes128;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Key agility: the cost of switching to a new key, i.e. expanding the key schedule, and of creating a new cipher
+ * instance (which includes the expansion of both the encryption and decryption schedules).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeyExpansionBenchmark {
+
+    private Key key;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Key.InvalidKeyException {
+        key = new Key(HexFormat.of().parseHex("2b7e151628aed2a6abf7158809cf4f3c"));
+    }
+
+    @Benchmark
+    public List<Key> expand() {
+        return key.expand();
+    }
+
+    @Benchmark
+    public Key.Schedule expandSchedule() {
+        return key.expandSchedule();
+    }
+
+    @Benchmark
+    public AES128ECB newCipher() {
+        return new AES128ECB(key);
+    }
+}
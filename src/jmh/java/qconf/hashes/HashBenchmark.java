@@ -0,0 +1,68 @@
+package qconf.hashes;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the hash functions for payloads from 16 bytes up to 64 MB, through both the one-shot
+ * {@link HashFunction#digest} and an incremental {@link Hasher} that is reused between messages.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HashBenchmark {
+
+    @Param({"SHA1", "SHA256", "SHA384", "SHA512", "BLAKE2s"})
+    public String hash;
+
+    /** Payload size in bytes */
+    @Param({"16", "1024", "65536", "1048576", "67108864"})
+    public int size;
+
+    private HashFunction hashFunction;
+    private Hasher hasher;
+    private byte[] input;
+    private final byte[] output = new byte[64];
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        hashFunction = switch (hash) {
+            case "SHA1" -> new SHA1();
+            case "SHA256" -> new SHA256();
+            case "SHA384" -> new SHA384();
+            case "SHA512" -> new SHA512();
+            case "BLAKE2s" -> new BLAKE2s();
+            default -> throw new IllegalArgumentException("Unknown hash function " + hash);
+        };
+        hasher = hashFunction.newHasher();
+        input = new byte[size];
+        new Random(42).nextBytes(input);
+    }
+
+    @Benchmark
+    public Digest digest() {
+        return hashFunction.digest(input);
+    }
+
+    @Benchmark
+    public byte[] hasher() {
+        hasher.update(input).finish(output, 0);
+        return output;
+    }
+}
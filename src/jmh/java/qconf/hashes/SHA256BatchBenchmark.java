@@ -0,0 +1,79 @@
+package qconf.hashes;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hashing many short records, comparing the interleaved {@link SHA256#digestAll} against calling
+ * {@link SHA256#digest} for each record.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SHA256BatchBenchmark {
+
+    /** Number of records to hash per operation */
+    @Param({"4096"})
+    public int records;
+
+    /** Length of each record in bytes */
+    @Param({"32", "64", "200"})
+    public int recordSize;
+
+    private final SHA256 sha256 = new SHA256();
+    private byte[][] inputs;
+    private byte[] data;
+    private int[] offsets;
+    private int[] lengths;
+    private byte[] output;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        inputs = new byte[records][recordSize];
+        data = new byte[records * recordSize];
+        offsets = new int[records];
+        lengths = new int[records];
+        for (int i = 0; i < records; i++) {
+            random.nextBytes(inputs[i]);
+            System.arraycopy(inputs[i], 0, data, i * recordSize, recordSize);
+            offsets[i] = i * recordSize;
+            lengths[i] = recordSize;
+        }
+        output = new byte[records * sha256.digestSize()];
+    }
+
+    @Benchmark
+    public byte[] loop() {
+        for (int i = 0; i < records; i++)
+            System.arraycopy(sha256.digest(inputs[i]).asBytes(), 0, output, i * 32, 32);
+        return output;
+    }
+
+    @Benchmark
+    public byte[] digestAll() {
+        return sha256.digestAll(inputs);
+    }
+
+    @Benchmark
+    public byte[] digestAllFlat() {
+        sha256.digestAll(data, offsets, lengths, output, 0);
+        return output;
+    }
+}
@@ -0,0 +1,54 @@
+package qconf.kdf;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import qconf.hashes.SHA1;
+import qconf.hashes.SHA256;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PBKDF2 iteration throughput on a single thread. Each operation is one iteration (two HMAC compressions of the
+ * inner loop), so the score is the number of iterations per second per core.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PBKDF2Benchmark {
+
+    private static final int ITERATIONS = 100_000;
+
+    @Param({"SHA1", "SHA256"})
+    public String hash;
+
+    private PBKDF2<?> pbkdf2;
+    private final byte[] password = "correct horse battery staple".getBytes(StandardCharsets.US_ASCII);
+    private final byte[] salt = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        pbkdf2 = hash.equals("SHA1") ? new PBKDF2<>(SHA1::new) : new PBKDF2<>(SHA256::new);
+    }
+
+    /** A single block key, i.e. the serial inner loop */
+    @Benchmark
+    @OperationsPerInvocation(ITERATIONS)
+    public byte[] deriveKey() {
+        return pbkdf2.deriveKey(password, salt, ITERATIONS, 20);
+    }
+}
@@ -0,0 +1,80 @@
+package qconf.mac;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import qconf.ciphers.aes128.Key;
+import qconf.hashes.Digest;
+import qconf.hashes.SHA256;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MACs per second for short messages of 16 to 256 bytes, comparing AES-CMAC, both one message at a time and in
+ * batches using {@link AES128CMAC#macAll}, with HMAC-SHA256 using a prepared {@link HMAC.Keyed} instance.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CMACBenchmark {
+
+    private static final int BATCH = 1024;
+
+    /** Message size in bytes */
+    @Param({"16", "64", "256"})
+    public int size;
+
+    private AES128CMAC cmac;
+    private HMAC.Keyed hmac;
+    private byte[][] inputs;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Key.InvalidKeyException {
+        Random random = new Random(42);
+        byte[] key = new byte[Key.LENGTH];
+        random.nextBytes(key);
+        cmac = new AES128CMAC(new Key(key));
+        hmac = new HMAC<>(SHA256::new).withKey(key);
+        inputs = new byte[BATCH][size];
+        for (byte[] input : inputs)
+            random.nextBytes(input);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public Digest cmac() {
+        Digest last = null;
+        for (byte[] input : inputs)
+            last = cmac.digest(input);
+        return last;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public byte[] cmacAll() {
+        return cmac.macAll(inputs);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public Digest hmacSha256() {
+        Digest last = null;
+        for (byte[] input : inputs)
+            last = hmac.digest(input);
+        return last;
+    }
+}
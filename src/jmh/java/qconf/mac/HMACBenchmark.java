@@ -0,0 +1,69 @@
+package qconf.mac;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import qconf.hashes.Digest;
+import qconf.hashes.SHA1;
+import qconf.hashes.SHA256;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HMAC throughput for payloads from 16 bytes up to 64 MB, comparing {@link HMAC#digest}, which processes the key
+ * for every message, with a {@link HMAC.Keyed} instance that reuses the padded key states.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HMACBenchmark {
+
+    @Param({"SHA1", "SHA256"})
+    public String hash;
+
+    /** Payload size in bytes */
+    @Param({"16", "1024", "65536", "1048576", "67108864"})
+    public int size;
+
+    private HMAC<?> hmac;
+    private HMAC.Keyed keyed;
+    private final byte[] key = new byte[32];
+    private byte[] input;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        hmac = switch (hash) {
+            case "SHA1" -> new HMAC<>(SHA1::new);
+            case "SHA256" -> new HMAC<>(SHA256::new);
+            default -> throw new IllegalArgumentException("Unknown hash function " + hash);
+        };
+        Random random = new Random(42);
+        random.nextBytes(key);
+        keyed = hmac.withKey(key);
+        input = new byte[size];
+        random.nextBytes(input);
+    }
+
+    @Benchmark
+    public Digest digest() {
+        return hmac.digest(key, input);
+    }
+
+    @Benchmark
+    public Digest keyed() {
+        return keyed.digest(input);
+    }
+}
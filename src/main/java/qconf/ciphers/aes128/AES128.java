@@ -1,6 +1,14 @@
 package qconf.ciphers.aes128;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /**
  * The AES128 class serves as a base for AES-128 modes of operation. It provides all basic encryption
@@ -64,166 +72,308 @@ public abstract class AES128 {
         0x17, 0x2b, 0x04, 0x7e, 0xba, 0x77, 0xd6, 0x26, 0xe1, 0x69, 0x14, 0x63, 0x55, 0x21, 0x0c, 0x7d
     };
 
-    private final List<Key> expandedKey;
+    /*
+     * Encryption T-tables. Each entry combines SubBytes and MixColumns for a single byte of input, so that a full
+     * AES round (including ShiftRows, which is handled by the choice of table indices) becomes 16 table lookups and
+     * a few XORs per block. TE1-TE3 are byte rotations of TE0, one for each row of the state.
+     */
+    static final int[] TE0 = new int[256];
+    static final int[] TE1 = new int[256];
+    static final int[] TE2 = new int[256];
+    static final int[] TE3 = new int[256];
 
-    AES128(Key key) {
-        expandedKey = key.expand();
+    /*
+     * Decryption T-tables for the equivalent inverse cipher, combining InvSubBytes and InvMixColumns in the same way
+     * as the encryption tables above.
+     */
+    static final int[] TD0 = new int[256];
+    static final int[] TD1 = new int[256];
+    static final int[] TD2 = new int[256];
+    static final int[] TD3 = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int s = SBOX[i];
+            int word = (xtime(s) << 24) | (s << 16) | (s << 8) | (xtime(s) ^ s);
+            TE0[i] = word;
+            TE1[i] = Integer.rotateRight(word, 8);
+            TE2[i] = Integer.rotateRight(word, 16);
+            TE3[i] = Integer.rotateRight(word, 24);
+
+            int inv = INV_SBOX[i];
+            word = (galoisMultiply(0xe, inv) << 24) | (galoisMultiply(0x9, inv) << 16) |
+                   (galoisMultiply(0xd, inv) << 8) | galoisMultiply(0xb, inv);
+            TD0[i] = word;
+            TD1[i] = Integer.rotateRight(word, 8);
+            TD2[i] = Integer.rotateRight(word, 16);
+            TD3[i] = Integer.rotateRight(word, 24);
+        }
     }
 
-    void encrypt(State state) {
-        state.addRoundKey(expandedKey.get(0));
-        for (int i = 1; i < NUM_ROUNDS; i++)
-            state.round(expandedKey.get(i), false);
-        state.round(expandedKey.get(NUM_ROUNDS), true);
+    /** Name of the cipher, as reported to JDK Flight Recorder. */
+    static final String ALGORITHM = "AES-128";
+
+    /** Number of bytes processed by each task when a mode of operation is run on several threads. */
+    static final int PARALLEL_CHUNK_SZ = 64 * 1024;
+
+    /** Size of the scratch array used when processing buffers that are not backed by an accessible array. */
+    static final int SCRATCH_SZ = 4096;
+
+    /** View of a byte array as native order longs, used for XORing 8 bytes at a time. */
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    /** The implementation used by {@link #xor}. */
+    private static final XorKernel XOR_KERNEL = loadXorKernel();
+
+    /** The encryption round keys, stored as 4 big endian words per round. */
+    private final int[] encryptionKeys;
+
+    /** The decryption round keys for the equivalent inverse cipher, in the order they are applied. */
+    private final int[] decryptionKeys;
+
+    /** Scratch space for {@link #transform}, allocated on first use. */
+    private byte[] scratch;
+
+    AES128(Key key) {
+        this(key.expandSchedule());
     }
 
-    void decrypt(State state) {
-        state.invRound(expandedKey.get(expandedKey.size() - 1), true);
-        for (int i = expandedKey.size() - 2; i > 0; i--)
-            state.invRound(expandedKey.get(i), false);
-        state.addRoundKey(expandedKey.get(0));
+    /** Create a cipher from an already expanded key schedule, which may be shared with other instances. */
+    AES128(Key.Schedule schedule) {
+        encryptionKeys = schedule.encryptionKeys;
+        decryptionKeys = schedule.decryptionKeys;
     }
 
+    /** @return the name of the mode of operation, e.g. "CBC". */
+    abstract String modeName();
+
     /**
-     * @param input the input to the cipher.
-     * @throws AES128BlockMode.InvalidInputLengthException if the length is not a multiple of the block size of 16 bytes.
+     * Encrypt a single block. The input and output may refer to the same array, and no memory is allocated,
+     * so this is safe to call for every block on the hot path of a mode of operation.
+     *
+     * @param in the array holding the plaintext block.
+     * @param inOff the offset of the plaintext block in {@code in}.
+     * @param out the array to write the ciphertext block to.
+     * @param outOff the offset at which to write the ciphertext block in {@code out}.
      */
-    static void checkInputLength(byte[] input) throws AES128BlockMode.InvalidInputLengthException {
-        if (input.length % BLOCK_SZ != 0)
-            throw new AES128BlockMode.InvalidInputLengthException(input.length);
-    }
+    final void encryptBlock(byte[] in, int inOff, byte[] out, int outOff) {
+        int[] rk = encryptionKeys;
 
+        // Each word holds one column of the state
+        int s0 = bytesToInt(in, inOff) ^ rk[0];
+        int s1 = bytesToInt(in, inOff + 4) ^ rk[1];
+        int s2 = bytesToInt(in, inOff + 8) ^ rk[2];
+        int s3 = bytesToInt(in, inOff + 12) ^ rk[3];
 
-    /** Class representing a 16 byte AES state */
-    static class State {
-        private static final byte[][] MIX_COLUMN_MATRIX = {
-            {2, 3, 1, 1},
-            {1, 2, 3, 1},
-            {1, 1, 2, 3},
-            {3, 1, 1, 2},
-        };
+        int k = NUM_COLS;
+        for (int round = 1; round < NUM_ROUNDS; round++, k += NUM_COLS) {
+            int t0 = TE0[s0 >>> 24] ^ TE1[(s1 >>> 16) & 0xff] ^ TE2[(s2 >>> 8) & 0xff] ^ TE3[s3 & 0xff] ^ rk[k];
+            int t1 = TE0[s1 >>> 24] ^ TE1[(s2 >>> 16) & 0xff] ^ TE2[(s3 >>> 8) & 0xff] ^ TE3[s0 & 0xff] ^ rk[k + 1];
+            int t2 = TE0[s2 >>> 24] ^ TE1[(s3 >>> 16) & 0xff] ^ TE2[(s0 >>> 8) & 0xff] ^ TE3[s1 & 0xff] ^ rk[k + 2];
+            int t3 = TE0[s3 >>> 24] ^ TE1[(s0 >>> 16) & 0xff] ^ TE2[(s1 >>> 8) & 0xff] ^ TE3[s2 & 0xff] ^ rk[k + 3];
+            s0 = t0;
+            s1 = t1;
+            s2 = t2;
+            s3 = t3;
+        }
 
-        private static final byte[][] INV_MIX_COLUMN_MATRIX = {
-            {0xe, 0xb, 0xd, 0x9},
-            {0x9, 0xe, 0xb, 0xd},
-            {0xd, 0x9, 0xe, 0xb},
-            {0xb, 0xd, 0x9, 0xe},
-        };
+        // The final round has no MixColumns step, so we use the plain S-Box
+        intToBytes(finalRoundWord(SBOX, s0, s1, s2, s3) ^ rk[k], out, outOff);
+        intToBytes(finalRoundWord(SBOX, s1, s2, s3, s0) ^ rk[k + 1], out, outOff + 4);
+        intToBytes(finalRoundWord(SBOX, s2, s3, s0, s1) ^ rk[k + 2], out, outOff + 8);
+        intToBytes(finalRoundWord(SBOX, s3, s0, s1, s2) ^ rk[k + 3], out, outOff + 12);
+    }
 
-        byte[] state;
+    /**
+     * Decrypt using the equivalent inverse cipher (see FIPS 197, section 5.3.5), which has the same structure as
+     * encryption. This requires InvMixColumns to be applied to the middle round keys, which is done when the
+     * decryption key schedule is created. Like {@link #encryptBlock}, this does not allocate any memory.
+     *
+     * @param in the array holding the ciphertext block.
+     * @param inOff the offset of the ciphertext block in {@code in}.
+     * @param out the array to write the plaintext block to.
+     * @param outOff the offset at which to write the plaintext block in {@code out}.
+     */
+    final void decryptBlock(byte[] in, int inOff, byte[] out, int outOff) {
+        int[] rk = decryptionKeys;
 
-        public State(byte[] state) {
-            this.state = state;
-        }
+        int s0 = bytesToInt(in, inOff) ^ rk[0];
+        int s1 = bytesToInt(in, inOff + 4) ^ rk[1];
+        int s2 = bytesToInt(in, inOff + 8) ^ rk[2];
+        int s3 = bytesToInt(in, inOff + 12) ^ rk[3];
 
-        /** Transpose this state (seen as a 4 x 4 matrix), taking rows to columns and vice versa. */
-        private void transpose() {
-            byte[] newState = new byte[BLOCK_SZ];
-            for (int i = 0; i < 4 * (BLOCK_SZ - 1); i += 4)
-                newState[i / 4] = state[i % (BLOCK_SZ - 1)];
-            newState[BLOCK_SZ - 1] = state[BLOCK_SZ - 1];
-            state = newState;
+        int k = NUM_COLS;
+        for (int round = 1; round < NUM_ROUNDS; round++, k += NUM_COLS) {
+            int t0 = TD0[s0 >>> 24] ^ TD1[(s3 >>> 16) & 0xff] ^ TD2[(s2 >>> 8) & 0xff] ^ TD3[s1 & 0xff] ^ rk[k];
+            int t1 = TD0[s1 >>> 24] ^ TD1[(s0 >>> 16) & 0xff] ^ TD2[(s3 >>> 8) & 0xff] ^ TD3[s2 & 0xff] ^ rk[k + 1];
+            int t2 = TD0[s2 >>> 24] ^ TD1[(s1 >>> 16) & 0xff] ^ TD2[(s0 >>> 8) & 0xff] ^ TD3[s3 & 0xff] ^ rk[k + 2];
+            int t3 = TD0[s3 >>> 24] ^ TD1[(s2 >>> 16) & 0xff] ^ TD2[(s1 >>> 8) & 0xff] ^ TD3[s0 & 0xff] ^ rk[k + 3];
+            s0 = t0;
+            s1 = t1;
+            s2 = t2;
+            s3 = t3;
         }
 
-        /** Perform the AES round */
-        private void round(Key key, boolean finalRound) {
-            subBytes(SBOX);
-            transpose();
-            shiftRows(false);
-            if (!finalRound)
-                mixColumns(MIX_COLUMN_MATRIX);
-            transpose();
-            addRoundKey(key);
-        }
+        intToBytes(finalRoundWord(INV_SBOX, s0, s3, s2, s1) ^ rk[k], out, outOff);
+        intToBytes(finalRoundWord(INV_SBOX, s1, s0, s3, s2) ^ rk[k + 1], out, outOff + 4);
+        intToBytes(finalRoundWord(INV_SBOX, s2, s1, s0, s3) ^ rk[k + 2], out, outOff + 8);
+        intToBytes(finalRoundWord(INV_SBOX, s3, s2, s1, s0) ^ rk[k + 3], out, outOff + 12);
+    }
 
-        /** Perform the inverse of an AES round */
-        private void invRound(Key key, boolean finalRound) {
-            addRoundKey(key);
-            transpose();
-            if (!finalRound)
-                mixColumns(INV_MIX_COLUMN_MATRIX);
-            shiftRows(true);
-            transpose();
-            subBytes(INV_SBOX);
-        }
+    /** Apply InvMixColumns to a single column, stored as a big endian word */
+    static int invMixColumn(int word) {
+        // The decryption tables include InvSubBytes, which we cancel out by applying the S-Box first
+        return TD0[SBOX[word >>> 24]] ^ TD1[SBOX[(word >>> 16) & 0xff]] ^
+               TD2[SBOX[(word >>> 8) & 0xff]] ^ TD3[SBOX[word & 0xff]];
+    }
 
-        /** Perform the AES SubBytes operation, or the inverse, depending on the S-Box provided */
-        private void subBytes(short[] sbox) {
-            for (int row = 0; row < NUM_ROWS; row++) {
-                for (int col = 0; col < NUM_COLS; col++) {
-                    int idx = NUM_COLS * row + col;
-                    state[idx] = (byte) sbox[state[idx] & 0xff];
-                }
-            }
+    /** Apply the S-Box to one output column of the final round, taking one byte from each of the given words */
+    private static int finalRoundWord(short[] sbox, int a, int b, int c, int d) {
+        return (sbox[a >>> 24] << 24) | (sbox[(b >>> 16) & 0xff] << 16) | (sbox[(c >>> 8) & 0xff] << 8) |
+                sbox[d & 0xff];
+    }
+
+    /** Multiply a byte by x (i.e. 2) in GF(2^8), reducing by the polynomial x^8 + x^4 + x^3 + x + 1 */
+    static int xtime(int b) {
+        b <<= 1;
+        return ((b & 0x100) != 0 ? b ^ 0x11b : b) & 0xff;
+    }
+
+    /**
+     * Multiply two bytes in GF(2^8).
+     * For details, see <a href="https://en.wikipedia.org/wiki/Finite_field_arithmetic">Wikipedia</a>
+     * This is only used to set up the lookup tables.
+     */
+    private static int galoisMultiply(int a, int b) {
+        int result = 0;
+        for (int i = 0; i < Byte.SIZE; i++) {
+            // Multiplying with the constant term of a as a polynomial
+            if ((a & 1) == 1)
+                result ^= b;
+            b = xtime(b);
+            a >>= 1;
         }
+        return result;
+    }
 
-        /** Perform the AES (Inverse)ShiftRows operation. */
-        private void shiftRows(boolean inverse) {
-            for (int row = 1; row < NUM_ROWS; row++) {
-                int rowStart = row * NUM_COLS;
-                byte[] rowElems = {state[rowStart], state[rowStart + 1], state[rowStart + 2], state[rowStart + 3]};
-                for (int col = 0; col < NUM_COLS; col++) {
-                    int shift = inverse ? (col - row + NUM_COLS) : (col + row);
-                    state[rowStart + col] = rowElems[shift % NUM_COLS];
-                }
-            }
+    /** Convert 4 bytes in big endian format, starting at the given offset, into a 32-bit integer */
+    static int bytesToInt(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xff) << 24) | ((bytes[offset + 1] & 0xff) << 16) |
+               ((bytes[offset + 2] & 0xff) << 8) | (bytes[offset + 3] & 0xff);
+    }
+
+    /** Write a 32-bit integer as 4 big endian bytes, starting at the given offset */
+    static void intToBytes(int value, byte[] bytes, int offset) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    /**
+     * XOR len bytes of a and b into out. The output may be the same range as either of the inputs, but must not
+     * otherwise overlap with them.
+     */
+    static void xor(byte[] a, int aOff, byte[] b, int bOff, byte[] out, int outOff, int len) {
+        XOR_KERNEL.xor(a, aOff, b, bOff, out, outOff, len);
+    }
+
+    /** Scalar implementation of {@link #xor}, processing 8 bytes at a time. */
+    static void xorScalar(byte[] a, int aOff, byte[] b, int bOff, byte[] out, int outOff, int len) {
+        int i = 0;
+        for (; i <= len - Long.BYTES; i += Long.BYTES) {
+            long x = (long) LONGS.get(a, aOff + i) ^ (long) LONGS.get(b, bOff + i);
+            LONGS.set(out, outOff + i, x);
         }
+        for (; i < len; i++)
+            out[outOff + i] = (byte) (a[aOff + i] ^ b[bOff + i]);
+    }
 
-        /**
-         * Perform the AES MixColumns step. Note that this also handles the inverse operation
-         * based on the matrix given.
-         */
-        private void mixColumns(byte[][] matrix) {
-            byte[] newState = new byte[BLOCK_SZ];
-            for (int col = 0; col < NUM_COLS; col++) {
-                for (int row = 0; row < NUM_ROWS; row++ ) {
-                   byte newValue = 0;
-                   for (int i = 0; i < NUM_COLS; i++)
-                       newValue ^= galoisMultiply(matrix[row][i], state[i * NUM_COLS + col]);
-                   newState[row * NUM_COLS + col] = newValue;
-                }
+    /**
+     * Use the Vector API implementation of XOR if it has been compiled (see the vector profile) and the
+     * jdk.incubator.vector module is available at runtime, and otherwise the scalar implementation.
+     */
+    private static XorKernel loadXorKernel() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                return (XorKernel) Class.forName("qconf.ciphers.aes128.VectorXor").getDeclaredConstructor()
+                                        .newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // Not compiled into this build, fall back to the scalar implementation
             }
-            state = newState;
         }
+        return AES128::xorScalar;
+    }
 
-        /**
-         * Multiply two bytes in GF(2^8).
-         * For details, see <a href="https://en.wikipedia.org/wiki/Finite_field_arithmetic">Wikipedia</a>
-         * NOTE: A more reasonable implementation would probably just use a lookup table for this.
-         */
-        private byte galoisMultiply(byte a, byte b) {
-            byte result = 0;
-            for (int i = 0; i < Byte.SIZE; i++) {
-                // Multiplying with the constant term of a as a polynomial
-                if ((a & 1) == 1)
-                    result ^= b;
-                // We want to multiply b with x. However, if b has a term x^7 we need to
-                // also reduce it by the primitive polynomial x^8 + x^4 + x^3 + x + 1.
-                // Note that the -1 is due to the fact that Java always consider bytes to be signed.
-                if ((b >> 7) == -1)
-                    b = (byte) ((b << 1) ^ 0x11b);
-                else
-                    b <<= 1;
-                a >>= 1;
-            }
-            return result;
+    /**
+     * Apply an operation to all remaining bytes of src, writing the result to dst. Heap buffers are processed
+     * directly in their backing arrays, while other buffers are processed in chunks through a reusable scratch
+     * array. The positions of both buffers are advanced by the number of bytes processed.
+     *
+     * @throws BufferOverflowException if dst has less space remaining than there are bytes remaining in src.
+     */
+    void transform(ByteBuffer src, ByteBuffer dst, Operation operation) {
+        int len = src.remaining();
+        if (dst.remaining() < len)
+            throw new BufferOverflowException();
+
+        if (src.hasArray() && dst.hasArray() && !dst.isReadOnly()) {
+            operation.apply(src.array(), src.arrayOffset() + src.position(),
+                            dst.array(), dst.arrayOffset() + dst.position(), len);
+            src.position(src.position() + len);
+            dst.position(dst.position() + len);
+            return;
         }
 
-        /** xor a round key into the state **/
-        private void addRoundKey(Key k) {
-            for (int i = 0; i < BLOCK_SZ; i++)
-                state[i] ^= k.key[i];
+        if (scratch == null)
+            scratch = new byte[SCRATCH_SZ];
+        while (src.hasRemaining()) {
+            int n = Math.min(src.remaining(), SCRATCH_SZ);
+            src.get(scratch, 0, n);
+            operation.apply(scratch, 0, scratch, 0, n);
+            dst.put(scratch, 0, n);
         }
+    }
 
-        @Override
-        public String toString() {
-            StringBuilder sb = new StringBuilder();
-            for (int i = 0; i < BLOCK_SZ; i++) {
-                sb.append(String.format("0x%x ", state[i]));
-                if ((i + 1) % NUM_COLS == 0)
-                    sb.append("\n");
-            }
-            return sb.append("\n").toString();
+    /**
+     * Split len bytes of input into chunks of {@value #PARALLEL_CHUNK_SZ} bytes, and process each chunk on the given
+     * executor. Returns when all chunks have been processed.
+     */
+    static void forEachChunk(int len, Executor executor, Chunk chunk) {
+        List<CompletableFuture<Void>> tasks = new ArrayList<>();
+        for (int start = 0; start < len; start += PARALLEL_CHUNK_SZ) {
+            int chunkStart = start;
+            int chunkLen = Math.min(PARALLEL_CHUNK_SZ, len - start);
+            tasks.add(CompletableFuture.runAsync(() -> chunk.process(chunkStart, chunkLen), executor));
         }
+        CompletableFuture.allOf(tasks.toArray(new CompletableFuture[0])).join();
+    }
+
+    /**
+     * @param length the length of the input to the cipher.
+     * @throws AES128BlockMode.InvalidInputLengthException if the length is not a multiple of the block size of 16 bytes.
+     */
+    static void checkInputLength(int length) throws AES128BlockMode.InvalidInputLengthException {
+        if (length % BLOCK_SZ != 0)
+            throw new AES128BlockMode.InvalidInputLengthException(length);
+    }
+
+    /**
+     * An operation of a mode, transforming len bytes of input into len bytes of output. Any chaining state of the
+     * mode is carried over from the previous operation, so that a message may be processed in several parts.
+     * The input and output may refer to the same array, as long as the offsets are equal.
+     */
+    interface Operation {
+        void apply(byte[] in, int inOff, byte[] out, int outOff, int len);
+    }
+
+    /** An implementation of {@link #xor}. */
+    interface XorKernel {
+        void xor(byte[] a, int aOff, byte[] b, int bOff, byte[] out, int outOff, int len);
+    }
+
+    /** A task processing the chunk of input starting at the given offset, see {@link #forEachChunk}. */
+    interface Chunk {
+        void process(int start, int len);
     }
 }
@@ -1,5 +1,11 @@
 package qconf.ciphers.aes128;
 
+import qconf.jfr.CipherOperationEvent;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
 /**
  * Class representing AES block modes of operations.
  *
@@ -11,27 +17,180 @@ public abstract class AES128BlockMode extends AES128 {
         super(key);
     }
 
+    AES128BlockMode(Key.Schedule schedule) {
+        super(schedule);
+    }
+
     /**
      * @param plaintext the plaintext to be encrypted.
      * @return a byte array containing the encrypted form of the plaintext.
      * @throws InvalidInputLengthException if the plaintext is not a multiple of the block size (16 bytes).
      */
-    public abstract byte[] encrypt(byte[] plaintext) throws AES128BlockMode.InvalidInputLengthException;
+    public byte[] encrypt(byte[] plaintext) throws AES128BlockMode.InvalidInputLengthException {
+        checkInputLength(plaintext.length);
+        CipherOperationEvent event = new CipherOperationEvent();
+        event.begin();
+        byte[] output = new byte[plaintext.length];
+        startMessage();
+        encrypt(plaintext, 0, output, 0, plaintext.length);
+        event.complete(ALGORITHM, modeName(), "encrypt", plaintext.length);
+        return output;
+    }
 
     /**
      * @param ciphertext the ciphertext to be decrypted.
      * @return a byte array containing the decrypted form of the ciphertext.
      * @throws InvalidInputLengthException if the ciphertext is not a multiple of the block size (16 bytes).
      */
-    public abstract byte[] decrypt(byte[] ciphertext) throws AES128BlockMode.InvalidInputLengthException;
+    public byte[] decrypt(byte[] ciphertext) throws AES128BlockMode.InvalidInputLengthException {
+        checkInputLength(ciphertext.length);
+        CipherOperationEvent event = new CipherOperationEvent();
+        event.begin();
+        byte[] output = new byte[ciphertext.length];
+        startMessage();
+        decrypt(ciphertext, 0, output, 0, ciphertext.length);
+        event.complete(ALGORITHM, modeName(), "decrypt", ciphertext.length);
+        return output;
+    }
+
+    /**
+     * Encrypt the remaining bytes of src into dst. Both heap and direct buffers are supported. The buffers may be
+     * the same buffer, but must otherwise not overlap.
+     *
+     * @param src the plaintext to be encrypted. Its position will be advanced to its limit.
+     * @param dst the buffer to write the ciphertext to. Its position will be advanced by the length of the input.
+     * @throws InvalidInputLengthException if the plaintext is not a multiple of the block size (16 bytes).
+     * @throws java.nio.BufferOverflowException if there is not enough space remaining in dst.
+     */
+    public void encrypt(ByteBuffer src, ByteBuffer dst) throws AES128BlockMode.InvalidInputLengthException {
+        checkInputLength(src.remaining());
+        CipherOperationEvent event = new CipherOperationEvent();
+        event.begin();
+        int len = src.remaining();
+        startMessage();
+        transform(src, dst, this::encrypt);
+        event.complete(ALGORITHM, modeName(), "encrypt", len);
+    }
+
+    /**
+     * Decrypt the remaining bytes of src into dst. Both heap and direct buffers are supported. The buffers may be
+     * the same buffer, but must otherwise not overlap.
+     *
+     * @param src the ciphertext to be decrypted. Its position will be advanced to its limit.
+     * @param dst the buffer to write the plaintext to. Its position will be advanced by the length of the input.
+     * @throws InvalidInputLengthException if the ciphertext is not a multiple of the block size (16 bytes).
+     * @throws java.nio.BufferOverflowException if there is not enough space remaining in dst.
+     */
+    public void decrypt(ByteBuffer src, ByteBuffer dst) throws AES128BlockMode.InvalidInputLengthException {
+        checkInputLength(src.remaining());
+        CipherOperationEvent event = new CipherOperationEvent();
+        event.begin();
+        int len = src.remaining();
+        startMessage();
+        transform(src, dst, this::decrypt);
+        event.complete(ALGORITHM, modeName(), "decrypt", len);
+    }
+
+    /**
+     * Create a channel that encrypts all data written to it before writing it to the given channel. Only whole
+     * blocks are written to the underlying channel, so the total amount of data written must be a multiple of the
+     * block size. The cipher should not be used for anything else while the channel is open.
+     *
+     * @param sink the (blocking) channel to write the ciphertext to.
+     * @return a channel accepting plaintext.
+     */
+    public WritableByteChannel encryptingChannel(WritableByteChannel sink) {
+        startMessage();
+        return new AES128WritableChannel(sink, this::encrypt, BLOCK_SZ);
+    }
+
+    /**
+     * Create a channel that decrypts all data written to it before writing it to the given channel. Only whole
+     * blocks are written to the underlying channel, so the total amount of data written must be a multiple of the
+     * block size. The cipher should not be used for anything else while the channel is open.
+     *
+     * @param sink the (blocking) channel to write the plaintext to.
+     * @return a channel accepting ciphertext.
+     */
+    public WritableByteChannel decryptingChannel(WritableByteChannel sink) {
+        startMessage();
+        return new AES128WritableChannel(sink, this::decrypt, BLOCK_SZ);
+    }
+
+    /**
+     * Create a channel that reads data from the given channel and returns it in encrypted form. The total amount
+     * of data in the source channel must be a multiple of the block size. The cipher should not be used for anything
+     * else while the channel is open.
+     *
+     * @param source the channel to read plaintext from.
+     * @return a channel providing ciphertext.
+     */
+    public ReadableByteChannel encryptingChannel(ReadableByteChannel source) {
+        startMessage();
+        return new AES128ReadableChannel(source, this::encrypt, BLOCK_SZ);
+    }
+
+    /**
+     * Create a channel that reads data from the given channel and returns it in decrypted form. The total amount
+     * of data in the source channel must be a multiple of the block size. The cipher should not be used for anything
+     * else while the channel is open.
+     *
+     * @param source the channel to read ciphertext from.
+     * @return a channel providing plaintext.
+     */
+    public ReadableByteChannel decryptingChannel(ReadableByteChannel source) {
+        startMessage();
+        return new AES128ReadableChannel(source, this::decrypt, BLOCK_SZ);
+    }
+
+    /**
+     * Create an incremental encryptor, which encrypts a message that is provided in several parts. The message is
+     * padded according to PKCS#7, so it may be of any length. The cipher should not be used for anything else until
+     * the encryption has been completed.
+     *
+     * @return a new {@link IncrementalCipher} for encryption.
+     */
+    public IncrementalCipher encryptor() {
+        return new IncrementalCipher(this::encrypt, this::startMessage, IncrementalCipher.Padding.ADD);
+    }
+
+    /**
+     * Create an incremental decryptor, which decrypts a message that is provided in several parts. The message is
+     * expected to be padded according to PKCS#7, and the padding is removed. The cipher should not be used for
+     * anything else until the decryption has been completed.
+     *
+     * @return a new {@link IncrementalCipher} for decryption.
+     */
+    public IncrementalCipher decryptor() {
+        return new IncrementalCipher(this::decrypt, this::startMessage, IncrementalCipher.Padding.REMOVE);
+    }
+
+    /** Reset any chaining state, so that the next operation starts a new message. */
+    abstract void startMessage();
+
+    /** Encrypt len bytes, which must be a multiple of the block size, continuing the current message. */
+    abstract void encrypt(byte[] in, int inOff, byte[] out, int outOff, int len);
+
+    /** Decrypt len bytes, which must be a multiple of the block size, continuing the current message. */
+    abstract void decrypt(byte[] in, int inOff, byte[] out, int outOff, int len);
 
     /**
      * AES-128 block modes of operations require the input to be a multiple of 16 bytes.
      */
     public static class InvalidInputLengthException extends Exception {
-        public InvalidInputLengthException(int inputLength) {
+        public InvalidInputLengthException(long inputLength) {
             super("The AES128 input must be a multiple of " + BLOCK_SZ + " bytes, but the input was " +
                   inputLength + " bytes long");
         }
     }
+
+    /**
+     * Exception for decrypted messages that do not end with valid PKCS#7 padding. This usually means that the
+     * wrong key or IV was used, or that the ciphertext has been modified.
+     */
+    public static class InvalidPaddingException extends Exception {
+        public InvalidPaddingException() {
+            super("The decrypted message does not end with valid PKCS#7 padding");
+        }
+    }
 }
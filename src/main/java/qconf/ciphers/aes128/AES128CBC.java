@@ -1,16 +1,28 @@
 package qconf.ciphers.aes128;
 
-import java.util.Arrays;
+import qconf.jfr.CipherOperationEvent;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * AES-128 CBC (Cipher Block Chaining) mode of operation, where each block is XORed with the previous block before
  * being encrypted to ensure that equivalent plaintext blocks will not hash to equivalent ciphertext blocks.
+ * <p>
+ * Instances hold the IV and chaining state, and are not thread-safe. To share a key between threads, use an
+ * {@link AES128Context}, which takes the IV as an argument of each call.
  *
  * @author Gabriel Skoglund
  */
 public class AES128CBC extends AES128BlockMode {
 
-    private State iv;
+    private byte[] iv;
+
+    /** The previous ciphertext block of the current message (initially the IV) */
+    private final byte[] chain = new byte[BLOCK_SZ];
+
+    /** Scratch space for the ciphertext block currently being decrypted */
+    private final byte[] ciphertextBlock = new byte[BLOCK_SZ];
 
     /**
      * Create a new AES-128 CBC cipher instance with the given key.
@@ -22,47 +34,99 @@ public class AES128CBC extends AES128BlockMode {
      * @throws InvalidInitializationVectorLengthException if the IV provided is not exactly 16 bytes.
      */
     public AES128CBC(Key key, byte[] initializationVector) throws InvalidInitializationVectorLengthException {
-        super(key);
+        this(key.expandSchedule(), initializationVector);
+    }
+
+    AES128CBC(Key.Schedule schedule, byte[] initializationVector) throws InvalidInitializationVectorLengthException {
+        super(schedule);
         if (initializationVector.length != BLOCK_SZ)
             throw new InvalidInitializationVectorLengthException(initializationVector.length);
-        iv = new State(initializationVector);
+        iv = initializationVector;
     }
 
     @Override
-    public byte[] encrypt(byte[] plaintext) throws InvalidInputLengthException {
-        checkInputLength(plaintext);
-
-        byte[] output = new byte[plaintext.length];
-        State currentState = iv;
-        for (int i = 0; i < plaintext.length; i += BLOCK_SZ) {
-            currentState = new State(xorBlocks(Arrays.copyOfRange(plaintext, i, i + BLOCK_SZ), currentState.state));
-            encrypt(currentState);
-            System.arraycopy(currentState.state, 0, output, i, BLOCK_SZ);
-        }
+    String modeName() {
+        return "CBC";
+    }
 
-        return output;
+    @Override
+    void startMessage() {
+        System.arraycopy(iv, 0, chain, 0, BLOCK_SZ);
     }
 
     @Override
-    public byte[] decrypt(byte[] ciphertext) throws InvalidInputLengthException {
-        checkInputLength(ciphertext);
+    void encrypt(byte[] in, int inOff, byte[] out, int outOff, int len) {
+        for (int i = 0; i < len; i += BLOCK_SZ) {
+            xor(in, inOff + i, chain, 0, chain, 0, BLOCK_SZ);
+            encryptBlock(chain, 0, chain, 0);
+            System.arraycopy(chain, 0, out, outOff + i, BLOCK_SZ);
+        }
+    }
 
-        byte[] output = new byte[ciphertext.length];
-        for (int i = 0; i < ciphertext.length; i += BLOCK_SZ) {
-            State currentState = new State(Arrays.copyOfRange(ciphertext, i, i + BLOCK_SZ));
-            decrypt(currentState);
-            byte[] prevBlock = (i == 0) ? iv.state : Arrays.copyOfRange(ciphertext, i - BLOCK_SZ, i);
-            System.arraycopy(xorBlocks(currentState.state, prevBlock), 0, output, i, BLOCK_SZ);
+    @Override
+    void decrypt(byte[] in, int inOff, byte[] out, int outOff, int len) {
+        if (in != out && len > 0) {
+            // Decrypt all blocks first, then XOR each with the previous ciphertext block in a single pass
+            for (int i = 0; i < len; i += BLOCK_SZ)
+                decryptBlock(in, inOff + i, out, outOff + i);
+            xor(out, outOff, chain, 0, out, outOff, BLOCK_SZ);
+            xor(out, outOff + BLOCK_SZ, in, inOff, out, outOff + BLOCK_SZ, len - BLOCK_SZ);
+            System.arraycopy(in, inOff + len - BLOCK_SZ, chain, 0, BLOCK_SZ);
+            return;
         }
+        for (int i = 0; i < len; i += BLOCK_SZ) {
+            // Save the ciphertext block before decrypting, since the input and output may be the same array
+            System.arraycopy(in, inOff + i, ciphertextBlock, 0, BLOCK_SZ);
+            decryptBlock(in, inOff + i, out, outOff + i);
+            xor(out, outOff + i, chain, 0, out, outOff + i, BLOCK_SZ);
+            System.arraycopy(ciphertextBlock, 0, chain, 0, BLOCK_SZ);
+        }
+    }
+
+    /**
+     * Decrypt the ciphertext using several threads of the common {@link ForkJoinPool}. Unlike encryption, CBC
+     * decryption of a block only depends on the block itself and the previous ciphertext block, so the ciphertext
+     * is split into ranges that are decrypted independently. Short ciphertexts are decrypted on the calling thread.
+     *
+     * @param ciphertext the ciphertext to be decrypted.
+     * @return a byte array containing the decrypted form of the ciphertext.
+     * @throws InvalidInputLengthException if the ciphertext is not a multiple of the block size (16 bytes).
+     */
+    public byte[] decryptParallel(byte[] ciphertext) throws InvalidInputLengthException {
+        return decryptParallel(ciphertext, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Decrypt the ciphertext using several threads of the given executor. See {@link #decryptParallel(byte[])}.
+     *
+     * @param ciphertext the ciphertext to be decrypted.
+     * @param executor the executor to run the decryption tasks on.
+     * @return a byte array containing the decrypted form of the ciphertext.
+     * @throws InvalidInputLengthException if the ciphertext is not a multiple of the block size (16 bytes).
+     */
+    public byte[] decryptParallel(byte[] ciphertext, Executor executor) throws InvalidInputLengthException {
+        // Not worth the overhead of handing out tasks
+        if (ciphertext.length <= PARALLEL_CHUNK_SZ)
+            return decrypt(ciphertext);
 
+        checkInputLength(ciphertext.length);
+        CipherOperationEvent event = new CipherOperationEvent();
+        event.begin();
+        byte[] output = new byte[ciphertext.length];
+        forEachChunk(ciphertext.length, executor, (start, len) -> decryptRange(ciphertext, output, start, len));
+        event.complete(ALGORITHM, modeName(), "decrypt", ciphertext.length);
         return output;
     }
 
-    private byte[] xorBlocks(byte[] target, byte[] other) {
-        byte[] result = new byte[BLOCK_SZ];
-        for (int i = 0; i < BLOCK_SZ; i++)
-            result[i] = (byte) (target[i] ^ other[i]);
-        return result;
+    /** Decrypt a range of whole blocks of the ciphertext into the same range of the output */
+    private void decryptRange(byte[] ciphertext, byte[] output, int start, int len) {
+        for (int i = start; i < start + len; i += BLOCK_SZ)
+            decryptBlock(ciphertext, i, output, i);
+        if (start == 0)
+            xor(output, 0, iv, 0, output, 0, BLOCK_SZ);
+        else
+            xor(output, start, ciphertext, start - BLOCK_SZ, output, start, BLOCK_SZ);
+        xor(output, start + BLOCK_SZ, ciphertext, start, output, start + BLOCK_SZ, len - BLOCK_SZ);
     }
 
     /**
@@ -74,7 +138,7 @@ public class AES128CBC extends AES128BlockMode {
             throws InvalidInitializationVectorLengthException {
         if (initializationVector.length != BLOCK_SZ)
             throw new InvalidInitializationVectorLengthException(initializationVector.length);
-        iv = new State(initializationVector);
+        iv = initializationVector;
         return this;
     }
 
@@ -82,7 +146,7 @@ public class AES128CBC extends AES128BlockMode {
      * @return the currently set IV of this cipher.
      */
     public byte[] getInitializationVector() {
-        return iv.state;
+        return iv;
     }
 
     public static class InvalidInitializationVectorLengthException extends Exception {
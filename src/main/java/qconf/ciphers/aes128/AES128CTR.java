@@ -1,12 +1,18 @@
 package qconf.ciphers.aes128;
 
+import qconf.jfr.CipherOperationEvent;
+
 import java.math.BigInteger;
-import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * AES-128 CTR (Counter) mode of operation, where the input is XORed with encrypted value of a counter which
  * is incremented for each block. This is a stream mode of operation and does not place any constraints on the
  * length of the input.
+ * <p>
+ * Instances hold the counter and keystream state, and are not thread-safe. To share a key between threads, use an
+ * {@link AES128Context}, which takes the initial counter value as an argument of each call.
  *
  * @author Gabriel Skoglund
  */
@@ -14,6 +20,16 @@ public class AES128CTR extends AES128StreamMode {
 
     private final Counter counter;
 
+    /** Number of keystream blocks generated at a time, so that the keystream can be XORed into the input in bulk */
+    private static final int KEYSTREAM_BLOCKS = 16;
+
+    /** Scratch space for the encrypted counter values */
+    private final byte[] keystream = new byte[KEYSTREAM_BLOCKS * BLOCK_SZ];
+
+    /** The number of bytes of keystream that have been generated, and the number of those that have been used */
+    private int keystreamLen;
+    private int keystreamPos;
+
     /**
      * Create a new AES-128 CBC cipher instance with the given key.
      *
@@ -24,59 +40,230 @@ public class AES128CTR extends AES128StreamMode {
      *                to create a new (securely) random initial counter value.
      */
     public AES128CTR(Key key, Counter counter) {
-        super(key);
+        this(key.expandSchedule(), counter);
+    }
+
+    AES128CTR(Key.Schedule schedule, Counter counter) {
+        super(schedule);
         this.counter = counter;
     }
 
     @Override
-    public byte[] encrypt(byte[] plaintext) {
-        byte[] output = new byte[plaintext.length];
-        for (int i = 0; ; i += BLOCK_SZ) {
-            State ctr = new State(counter.getValue());
-            encrypt(ctr);
-            int j = i;
-            for (; j < i + BLOCK_SZ && j < plaintext.length; j++)
-                output[j] = (byte) (ctr.state[j - i] ^ plaintext[j]);
+    String modeName() {
+        return "CTR";
+    }
+
+    @Override
+    void startMessage() {
+        // Any keystream left over from a partial block of a previous message is discarded
+        keystreamLen = keystreamPos = 0;
+    }
+
+    @Override
+    void encrypt(byte[] in, int inOff, byte[] out, int outOff, int len) {
+        // Starts by using up the keystream left over from the last block of the previous operation
+        for (int i = 0; i < len; ) {
+            if (keystreamPos == keystreamLen) {
+                keystreamLen = generateKeystream(counter, keystream, len - i);
+                keystreamPos = 0;
+            }
+            int n = Math.min(len - i, keystreamLen - keystreamPos);
+            xor(in, inOff + i, keystream, keystreamPos, out, outOff + i, n);
+            keystreamPos += n;
+            i += n;
+        }
+    }
+
+    /**
+     * Encrypt the next counter values into the keystream array, generating enough blocks for len bytes of input
+     * but at most as many as fit in the array. The counter is incremented once for each block.
+     *
+     * @return the number of bytes of keystream generated.
+     */
+    private int generateKeystream(Counter counter, byte[] keystream, int len) {
+        int generated = Math.min(keystream.length, (len + BLOCK_SZ - 1) / BLOCK_SZ * BLOCK_SZ);
+        for (int i = 0; i < generated; i += BLOCK_SZ) {
+            counter.getValue(keystream, i);
+            encryptBlock(keystream, i, keystream, i);
             counter.increment();
-            if (j == plaintext.length)
-                break;
         }
-        return output;
+        return generated;
     }
 
     @Override
-    public byte[] decrypt(byte[] ciphertext) {
+    void decrypt(byte[] in, int inOff, byte[] out, int outOff, int len) {
         // Note: CTR encryption and decryption use the same operations
-        return encrypt(ciphertext);
+        encrypt(in, inOff, out, outOff, len);
+    }
+
+    /**
+     * Position the cipher at the given byte offset from the start of the message (i.e. from the initial counter
+     * value), so that the next operation continues from there. Note that the public methods start a new message,
+     * which discards the position within the current block.
+     */
+    void seek(long offset) {
+        counter.seek(offset / BLOCK_SZ);
+        keystreamLen = keystreamPos = 0;
+        int skip = (int) (offset % BLOCK_SZ);
+        if (skip != 0) {
+            keystreamLen = generateKeystream(counter, keystream, 1);
+            keystreamPos = skip;
+        }
+    }
+
+    /**
+     * Encrypt the plaintext using several threads of the common {@link ForkJoinPool}. Each keystream block only
+     * depends on its counter value, so the input is split into chunks that are processed independently.
+     * The result, and the state of the counter afterwards, is the same as for {@link #encrypt(byte[])}.
+     *
+     * @param plaintext the plaintext to be encrypted.
+     * @return a byte array containing the encrypted form of the plaintext.
+     */
+    public byte[] encryptParallel(byte[] plaintext) {
+        return encryptParallel(plaintext, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Encrypt the plaintext using several threads of the given executor. See {@link #encryptParallel(byte[])}.
+     *
+     * @param plaintext the plaintext to be encrypted.
+     * @param executor the executor to run the encryption tasks on.
+     * @return a byte array containing the encrypted form of the plaintext.
+     */
+    public byte[] encryptParallel(byte[] plaintext, Executor executor) {
+        // Not worth the overhead of handing out tasks
+        if (plaintext.length <= PARALLEL_CHUNK_SZ)
+            return encrypt(plaintext);
+        return transformParallel(plaintext, executor, "encrypt");
     }
 
     /**
-     * Counter used for encryption/decryption.
+     * Decrypt the ciphertext using several threads of the common {@link ForkJoinPool}.
+     * See {@link #encryptParallel(byte[])}.
+     *
+     * @param ciphertext the ciphertext to be decrypted.
+     * @return a byte array containing the decrypted form of the ciphertext.
+     */
+    public byte[] decryptParallel(byte[] ciphertext) {
+        return decryptParallel(ciphertext, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Decrypt the ciphertext using several threads of the given executor. See {@link #encryptParallel(byte[])}.
+     *
+     * @param ciphertext the ciphertext to be decrypted.
+     * @param executor the executor to run the decryption tasks on.
+     * @return a byte array containing the decrypted form of the ciphertext.
+     */
+    public byte[] decryptParallel(byte[] ciphertext, Executor executor) {
+        if (ciphertext.length <= PARALLEL_CHUNK_SZ)
+            return decrypt(ciphertext);
+        return transformParallel(ciphertext, executor, "decrypt");
+    }
+
+    /** Encryption and decryption are the same operation, which only differ in the name of the recorded event */
+    private byte[] transformParallel(byte[] input, Executor executor, String operationName) {
+        CipherOperationEvent event = new CipherOperationEvent();
+        event.begin();
+        byte[] output = new byte[input.length];
+        startMessage();
+
+        // The last (possibly partial) block is left for the serial path below, so that the keystream state
+        // ends up exactly the same as after a serial encryption.
+        int parallelLen = (input.length - 1) / BLOCK_SZ * BLOCK_SZ;
+        forEachChunk(parallelLen, executor, (start, len) ->
+                encryptChunk(counter.plus(start / BLOCK_SZ), input, start, output, start, len));
+
+        counter.advance(parallelLen / BLOCK_SZ);
+        encrypt(input, parallelLen, output, parallelLen, input.length - parallelLen);
+        event.complete(ALGORITHM, modeName(), operationName, input.length);
+        return output;
+    }
+
+    /** Encrypt len bytes (a multiple of the block size), starting from the given counter which is updated. */
+    private void encryptChunk(Counter counter, byte[] in, int inOff, byte[] out, int outOff, int len) {
+        byte[] keystream = new byte[KEYSTREAM_BLOCKS * BLOCK_SZ];
+        for (int i = 0; i < len; ) {
+            int n = generateKeystream(counter, keystream, len - i);
+            xor(in, inOff + i, keystream, 0, out, outOff + i, n);
+            i += n;
+        }
+    }
+
+    /**
+     * Counter used for encryption/decryption. The counter is a 128-bit number which wraps around to zero after
+     * reaching 2^128 - 1, and the current value is used as the input block for the cipher.
      */
     public static class Counter {
-        private BigInteger counter;
+
+        /** The initial value, kept for {@link #seek} */
+        private final long initialHigh, initialLow;
+
+        /** The upper and lower 64 bits of the current value */
+        private long high, low;
+
+        private static final BigInteger MODULUS = BigInteger.ONE.shiftLeft(128);
 
         /**
-         * The maximum value of the counter before wrapping around (when extracting the lowest 128 bits)
-         * will be 2^128 - 1
+         * @param initialValue The initial value of this counter. Only the lowest 128 bits of the value are used.
          */
-        private static final BigInteger MAX_VALUE = new BigInteger("340282366920938463463374607431768211455");
+        public Counter(BigInteger initialValue) {
+            this(initialValue.mod(MODULUS).shiftRight(64).longValue(), initialValue.longValue());
+        }
 
         /**
-         * @param initialValue The initial value of this counter.
+         * @param initialHigh the upper 64 bits of the initial value of this counter.
+         * @param initialLow the lower 64 bits of the initial value of this counter.
          */
-        public Counter(BigInteger initialValue) {
-            counter = initialValue.mod(MAX_VALUE);
+        public Counter(long initialHigh, long initialLow) {
+            this.initialHigh = high = initialHigh;
+            this.initialLow = low = initialLow;
         }
 
-        /** Extract the lowest 16 bytes of the counter */
-        private byte[] getValue() {
-            byte[] val = counter.toByteArray();
-            return Arrays.copyOfRange(val, val.length - 16, val.length);
+        /**
+         * Set the counter to the value it has when encrypting the block with the given index, counting from the
+         * initial value. This allows decryption to start at any block of a message.
+         *
+         * @param blockIndex the (non-negative) index of the block, i.e. the byte offset divided by 16.
+         * @throws IllegalArgumentException if the block index is negative.
+         */
+        public void seek(long blockIndex) {
+            if (blockIndex < 0)
+                throw new IllegalArgumentException("The block index must not be negative, but was " + blockIndex);
+            high = initialHigh;
+            low = initialLow;
+            advance(blockIndex);
+        }
+
+        /** Write the current value as 16 big endian bytes, starting at the given offset */
+        private void getValue(byte[] out, int offset) {
+            intToBytes((int) (high >>> 32), out, offset);
+            intToBytes((int) high, out, offset + 4);
+            intToBytes((int) (low >>> 32), out, offset + 8);
+            intToBytes((int) low, out, offset + 12);
         }
 
         private void increment() {
-            counter = counter.add(BigInteger.ONE);
+            if (++low == 0)
+                high++;
+        }
+
+        /** Advance the counter by the given (non-negative) number of blocks */
+        private void advance(long blocks) {
+            long newLow = low + blocks;
+            // Carry into the upper half if the unsigned addition overflowed
+            if (Long.compareUnsigned(newLow, low) < 0)
+                high++;
+            low = newLow;
+        }
+
+        /** Create a new counter, which is ahead of this one by the given number of blocks */
+        private Counter plus(long blocks) {
+            Counter other = new Counter(initialHigh, initialLow);
+            other.high = high;
+            other.low = low;
+            other.advance(blocks);
+            return other;
         }
     }
 }
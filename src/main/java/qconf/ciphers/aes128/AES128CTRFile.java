@@ -0,0 +1,92 @@
+package qconf.ciphers.aes128;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+/**
+ * A file encrypted with AES-128 in CTR mode, supporting reads and writes at arbitrary offsets. Since each keystream
+ * block only depends on the counter value, a slice of the file can be decrypted by seeking the counter to the block
+ * containing the start of the slice. The cost of an operation is therefore proportional to the size of the slice,
+ * not to its offset in the file. Only the region of the file touched by an operation is memory mapped.
+ * <p>
+ * Note that overwriting a region reuses the keystream of that region, which leaks the XOR of the old and new
+ * plaintext to anyone that can observe both versions of the file.
+ *
+ * @author Gabriel Skoglund
+ */
+public class AES128CTRFile implements Closeable {
+
+    private final FileChannel channel;
+    private final AES128CTR cipher;
+
+    /**
+     * Open (or create) an encrypted file.
+     *
+     * @param path    the path of the file.
+     * @param key     the 16 byte key to use for encryption/decryption.
+     * @param counter the counter used for the start of the file. Its initial value determines the keystream, so
+     *                a file must always be opened with a counter having the same initial value.
+     * @throws IOException if the file could not be opened.
+     */
+    public AES128CTRFile(Path path, Key key, AES128CTR.Counter counter) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                        StandardOpenOption.WRITE);
+        this.cipher = new AES128CTR(key, counter);
+    }
+
+    /**
+     * Read and decrypt a slice of the file.
+     *
+     * @param offset the offset in the file of the first byte to read.
+     * @param len    the number of bytes to read.
+     * @return the decrypted bytes.
+     * @throws EOFException if the slice extends beyond the end of the file.
+     * @throws IOException  if reading from the file fails.
+     */
+    public synchronized byte[] read(long offset, int len) throws IOException {
+        Objects.checkFromIndexSize(offset, len, Long.MAX_VALUE);
+        if (offset + len > channel.size())
+            throw new EOFException("Cannot read " + len + " bytes at offset " + offset + " from a file of " +
+                                   channel.size() + " bytes");
+
+        byte[] plaintext = new byte[len];
+        MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, offset, len);
+        cipher.seek(offset);
+        cipher.transform(region, ByteBuffer.wrap(plaintext), cipher::decrypt);
+        return plaintext;
+    }
+
+    /**
+     * Encrypt and write data to the file, extending the file if necessary.
+     *
+     * @param offset the offset in the file at which to write the first byte.
+     * @param data   the plaintext to write.
+     * @throws IOException if writing to the file fails.
+     */
+    public synchronized void write(long offset, byte[] data) throws IOException {
+        Objects.checkFromIndexSize(offset, data.length, Long.MAX_VALUE);
+        MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_WRITE, offset, data.length);
+        cipher.seek(offset);
+        cipher.transform(ByteBuffer.wrap(data), region, cipher::encrypt);
+    }
+
+    /**
+     * @return the size of the file in bytes.
+     * @throws IOException if the size could not be determined.
+     */
+    public long size() throws IOException {
+        return channel.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
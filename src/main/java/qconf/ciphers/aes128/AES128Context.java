@@ -0,0 +1,103 @@
+package qconf.ciphers.aes128;
+
+/**
+ * An immutable AES-128 cipher context holding only the expanded key, which takes the IV or initial counter value
+ * as an argument of each call. Unlike the mode instances, which carry an IV or counter and the chaining state of the
+ * current message, a single context may be shared by any number of threads without locking.
+ * <p>
+ * Each call creates a short-lived mode instance sharing the round keys of the context, so the key is only expanded
+ * once. {@link AES128GCM} instances are immutable in the same way, and take the nonce as an argument of each call.
+ *
+ * @author Gabriel Skoglund
+ */
+public final class AES128Context {
+
+    private final Key.Schedule schedule;
+
+    /**
+     * Create a new context for the given key.
+     *
+     * @param key the 16 byte key to use for encryption/decryption.
+     */
+    public AES128Context(Key key) {
+        this(key.expandSchedule());
+    }
+
+    AES128Context(Key.Schedule schedule) {
+        this.schedule = schedule;
+    }
+
+    /**
+     * @param plaintext the plaintext to be encrypted in ECB mode.
+     * @return a byte array containing the encrypted form of the plaintext.
+     * @throws AES128BlockMode.InvalidInputLengthException if the plaintext is not a multiple of 16 bytes.
+     */
+    public byte[] encryptECB(byte[] plaintext) throws AES128BlockMode.InvalidInputLengthException {
+        return new AES128ECB(schedule).encrypt(plaintext);
+    }
+
+    /**
+     * @param ciphertext the ciphertext to be decrypted in ECB mode.
+     * @return a byte array containing the decrypted form of the ciphertext.
+     * @throws AES128BlockMode.InvalidInputLengthException if the ciphertext is not a multiple of 16 bytes.
+     */
+    public byte[] decryptECB(byte[] ciphertext) throws AES128BlockMode.InvalidInputLengthException {
+        return new AES128ECB(schedule).decrypt(ciphertext);
+    }
+
+    /**
+     * @param initializationVector the 16 byte IV for this message. It should be random and unique for each message.
+     * @param plaintext the plaintext to be encrypted in CBC mode.
+     * @return a byte array containing the encrypted form of the plaintext.
+     * @throws AES128CBC.InvalidInitializationVectorLengthException if the IV provided is not exactly 16 bytes.
+     * @throws AES128BlockMode.InvalidInputLengthException if the plaintext is not a multiple of 16 bytes.
+     */
+    public byte[] encryptCBC(byte[] initializationVector, byte[] plaintext)
+            throws AES128CBC.InvalidInitializationVectorLengthException, AES128BlockMode.InvalidInputLengthException {
+        return new AES128CBC(schedule, initializationVector).encrypt(plaintext);
+    }
+
+    /**
+     * @param initializationVector the 16 byte IV that the message was encrypted with.
+     * @param ciphertext the ciphertext to be decrypted in CBC mode.
+     * @return a byte array containing the decrypted form of the ciphertext.
+     * @throws AES128CBC.InvalidInitializationVectorLengthException if the IV provided is not exactly 16 bytes.
+     * @throws AES128BlockMode.InvalidInputLengthException if the ciphertext is not a multiple of 16 bytes.
+     */
+    public byte[] decryptCBC(byte[] initializationVector, byte[] ciphertext)
+            throws AES128CBC.InvalidInitializationVectorLengthException, AES128BlockMode.InvalidInputLengthException {
+        return new AES128CBC(schedule, initializationVector).decrypt(ciphertext);
+    }
+
+    /**
+     * @param initialCounter the initial 16 byte counter block for this message. <b>Important note:</b> The security
+     *                       of this mode relies on never reusing the same counter value/key combination, also across
+     *                       messages, so the counter ranges of different messages must not overlap.
+     * @param plaintext the plaintext to be encrypted in CTR mode.
+     * @return a byte array containing the encrypted form of the plaintext.
+     * @throws IllegalArgumentException if the counter block is not exactly 16 bytes.
+     */
+    public byte[] encryptCTR(byte[] initialCounter, byte[] plaintext) {
+        return new AES128CTR(schedule, counter(initialCounter)).encrypt(plaintext);
+    }
+
+    /**
+     * @param initialCounter the initial 16 byte counter block that the message was encrypted with.
+     * @param ciphertext the ciphertext to be decrypted in CTR mode.
+     * @return a byte array containing the decrypted form of the ciphertext.
+     * @throws IllegalArgumentException if the counter block is not exactly 16 bytes.
+     */
+    public byte[] decryptCTR(byte[] initialCounter, byte[] ciphertext) {
+        return new AES128CTR(schedule, counter(initialCounter)).decrypt(ciphertext);
+    }
+
+    /** Create a counter starting at the value of the given big endian counter block */
+    private static AES128CTR.Counter counter(byte[] block) {
+        if (block.length != AES128.BLOCK_SZ)
+            throw new IllegalArgumentException("The counter block must be " + AES128.BLOCK_SZ + " bytes, but was " +
+                                               block.length + " bytes");
+        long high = ((long) AES128.bytesToInt(block, 0) << 32) | (AES128.bytesToInt(block, 4) & 0xffffffffL);
+        long low = ((long) AES128.bytesToInt(block, 8) << 32) | (AES128.bytesToInt(block, 12) & 0xffffffffL);
+        return new AES128CTR.Counter(high, low);
+    }
+}
@@ -1,7 +1,10 @@
 package qconf.ciphers.aes128;
 
-import java.util.Arrays;
-import java.util.function.Consumer;
+import qconf.jfr.CipherOperationEvent;
+
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * AES-128 ECB (Electronic Codebook) mode of operation, applying the AES cipher on each block in turn, with no
@@ -20,24 +23,136 @@ public class AES128ECB extends AES128BlockMode {
         super(key);
     }
 
+    AES128ECB(Key.Schedule schedule) {
+        super(schedule);
+    }
+
+    @Override
+    String modeName() {
+        return "ECB";
+    }
+
+    @Override
+    void startMessage() {
+        // ECB does not carry any state between blocks
+    }
+
     @Override
-    public byte[] encrypt(byte[] plaintext) throws InvalidInputLengthException {
-        return performECB(plaintext, super::encrypt);
+    void encrypt(byte[] in, int inOff, byte[] out, int outOff, int len) {
+        for (int i = 0; i < len; i += BLOCK_SZ)
+            encryptBlock(in, inOff + i, out, outOff + i);
     }
+
     @Override
-    public byte[] decrypt(byte[] ciphertext) throws InvalidInputLengthException {
-        return performECB(ciphertext, super::decrypt);
+    void decrypt(byte[] in, int inOff, byte[] out, int outOff, int len) {
+        for (int i = 0; i < len; i += BLOCK_SZ)
+            decryptBlock(in, inOff + i, out, outOff + i);
     }
 
-    protected byte[] performECB(byte[] input, Consumer<State> operation) throws InvalidInputLengthException {
-        checkInputLength(input);
+    /**
+     * Encrypt a number of consecutive blocks, without allocating any memory. This is intended for encrypting large
+     * numbers of independent 16 byte values, such as identifiers, that are stored next to each other in an array.
+     * The input and output may be the same array, as long as the offsets are equal.
+     *
+     * @param in        the array holding the plaintext blocks.
+     * @param inOff     the offset of the first plaintext block in {@code in}.
+     * @param out       the array to write the ciphertext blocks to.
+     * @param outOff    the offset at which to write the first ciphertext block in {@code out}.
+     * @param numBlocks the number of blocks to encrypt.
+     * @throws IndexOutOfBoundsException if either of the arrays is too short.
+     * @throws IllegalArgumentException if the number of blocks is negative.
+     */
+    public void encryptBlocks(byte[] in, int inOff, byte[] out, int outOff, int numBlocks) {
+        encrypt(in, inOff, out, outOff, checkBounds(in, inOff, out, outOff, numBlocks));
+    }
 
+    /**
+     * Decrypt a number of consecutive blocks, without allocating any memory. See {@link #encryptBlocks}.
+     *
+     * @param in        the array holding the ciphertext blocks.
+     * @param inOff     the offset of the first ciphertext block in {@code in}.
+     * @param out       the array to write the plaintext blocks to.
+     * @param outOff    the offset at which to write the first plaintext block in {@code out}.
+     * @param numBlocks the number of blocks to decrypt.
+     * @throws IndexOutOfBoundsException if either of the arrays is too short.
+     * @throws IllegalArgumentException if the number of blocks is negative.
+     */
+    public void decryptBlocks(byte[] in, int inOff, byte[] out, int outOff, int numBlocks) {
+        decrypt(in, inOff, out, outOff, checkBounds(in, inOff, out, outOff, numBlocks));
+    }
+
+    /**
+     * Encrypt the plaintext using several threads of the common {@link ForkJoinPool}. Since all blocks are
+     * independent in ECB mode, the plaintext is split into chunks of blocks that are encrypted separately.
+     * Short plaintexts are encrypted on the calling thread.
+     *
+     * @param plaintext the plaintext to be encrypted.
+     * @return a byte array containing the encrypted form of the plaintext.
+     * @throws InvalidInputLengthException if the plaintext is not a multiple of the block size (16 bytes).
+     */
+    public byte[] encryptParallel(byte[] plaintext) throws InvalidInputLengthException {
+        return encryptParallel(plaintext, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Encrypt the plaintext using several threads of the given executor. See {@link #encryptParallel(byte[])}.
+     *
+     * @param plaintext the plaintext to be encrypted.
+     * @param executor the executor to run the encryption tasks on.
+     * @return a byte array containing the encrypted form of the plaintext.
+     * @throws InvalidInputLengthException if the plaintext is not a multiple of the block size (16 bytes).
+     */
+    public byte[] encryptParallel(byte[] plaintext, Executor executor) throws InvalidInputLengthException {
+        return performParallel(plaintext, executor, this::encrypt, "encrypt");
+    }
+
+    /**
+     * Decrypt the ciphertext using several threads of the common {@link ForkJoinPool}.
+     * See {@link #encryptParallel(byte[])}.
+     *
+     * @param ciphertext the ciphertext to be decrypted.
+     * @return a byte array containing the decrypted form of the ciphertext.
+     * @throws InvalidInputLengthException if the ciphertext is not a multiple of the block size (16 bytes).
+     */
+    public byte[] decryptParallel(byte[] ciphertext) throws InvalidInputLengthException {
+        return decryptParallel(ciphertext, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Decrypt the ciphertext using several threads of the given executor. See {@link #encryptParallel(byte[])}.
+     *
+     * @param ciphertext the ciphertext to be decrypted.
+     * @param executor the executor to run the decryption tasks on.
+     * @return a byte array containing the decrypted form of the ciphertext.
+     * @throws InvalidInputLengthException if the ciphertext is not a multiple of the block size (16 bytes).
+     */
+    public byte[] decryptParallel(byte[] ciphertext, Executor executor) throws InvalidInputLengthException {
+        return performParallel(ciphertext, executor, this::decrypt, "decrypt");
+    }
+
+    private byte[] performParallel(byte[] input, Executor executor, Operation operation, String operationName)
+            throws InvalidInputLengthException {
+        checkInputLength(input.length);
+        CipherOperationEvent event = new CipherOperationEvent();
+        event.begin();
         byte[] output = new byte[input.length];
-        for (int i = 0; i < input.length; i += BLOCK_SZ) {
-            State state = new State(Arrays.copyOfRange(input, i, i + BLOCK_SZ));
-            operation.accept(state);
-            System.arraycopy(state.state, 0, output, i, BLOCK_SZ);
-        }
+        // Not worth the overhead of handing out tasks
+        if (input.length <= PARALLEL_CHUNK_SZ)
+            operation.apply(input, 0, output, 0, input.length);
+        else
+            forEachChunk(input.length, executor, (start, len) -> operation.apply(input, start, output, start, len));
+        event.complete(ALGORITHM, modeName(), operationName, input.length);
         return output;
     }
+
+    /** Check that the blocks are within both arrays, and return their length in bytes */
+    private static int checkBounds(byte[] in, int inOff, byte[] out, int outOff, int numBlocks) {
+        if (numBlocks < 0)
+            throw new IllegalArgumentException("The number of blocks must not be negative, but was " + numBlocks);
+        // Computed as a long, so that a large number of blocks cannot wrap around and pass the checks
+        long len = (long) numBlocks * BLOCK_SZ;
+        Objects.checkFromIndexSize(inOff, len, in.length);
+        Objects.checkFromIndexSize(outOff, len, out.length);
+        return (int) len;
+    }
 }
@@ -0,0 +1,451 @@
+package qconf.ciphers.aes128;
+
+import qconf.jfr.CipherOperationEvent;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * AES-128 GCM (Galois/Counter Mode) authenticated encryption, as specified by NIST SP 800-38D. The message is
+ * encrypted in counter mode, and a 16 byte authentication tag is computed over the ciphertext and any additional
+ * authenticated data (AAD) using GHASH. Both are done in a single pass over the message: each part of the keystream
+ * is applied and the resulting ciphertext is hashed while it is still in the cache.
+ * <p>
+ * A cipher instance only holds the key schedule and the GHASH tables of the key, so it may be shared between threads.
+ * Each message is processed by its own {@link Encryptor} or {@link Decryptor}, with its own nonce.
+ *
+ * @author Gabriel Skoglund
+ */
+public class AES128GCM extends AES128 {
+
+    /** The length of the authentication tag in bytes. */
+    public static final int TAG_LENGTH = 16;
+
+    /** The recommended nonce length in bytes, for which no hashing is needed to derive the initial counter. */
+    public static final int NONCE_LENGTH = 12;
+
+    /** The maximum length of a message, limited by the 32-bit block counter */
+    private static final long MAX_TEXT_LENGTH = ((1L << 32) - 2) * BLOCK_SZ;
+
+    /** Number of keystream blocks generated at a time, which is also the unit in which ciphertext is hashed */
+    private static final int KEYSTREAM_BLOCKS = 16;
+
+    private final GHash ghash;
+
+    /**
+     * Create a new AES-128 GCM cipher instance with the given key.
+     *
+     * @param key the 16 byte key to use for encryption/decryption.
+     */
+    public AES128GCM(Key key) {
+        this(key.expandSchedule());
+    }
+
+    AES128GCM(Key.Schedule schedule) {
+        super(schedule);
+        // The hash subkey is the encryption of the zero block
+        byte[] h = new byte[BLOCK_SZ];
+        encryptBlock(h, 0, h, 0);
+        ghash = new GHash(h);
+    }
+
+    @Override
+    String modeName() {
+        return "GCM";
+    }
+
+    /**
+     * Encrypt and authenticate a message.
+     *
+     * @param nonce the nonce for this message, which should be 12 bytes long. <b>Important note:</b> The security of
+     *              this mode relies on never reusing the same nonce/key combination. Reusing a nonce reveals the XOR
+     *              of the messages and allows forgery of authentication tags.
+     * @param aad additional data which is authenticated but not encrypted, such as a header. May be empty.
+     * @param plaintext the plaintext to be encrypted.
+     * @return the ciphertext followed by the 16 byte authentication tag.
+     * @throws InvalidNonceLengthException if the nonce is empty.
+     */
+    public byte[] encrypt(byte[] nonce, byte[] aad, byte[] plaintext) throws InvalidNonceLengthException {
+        CipherOperationEvent event = new CipherOperationEvent();
+        event.begin();
+        byte[] output = new byte[plaintext.length + TAG_LENGTH];
+        Encryptor encryptor = encryptor(nonce);
+        encryptor.updateAAD(aad);
+        encryptor.update(plaintext, 0, plaintext.length, output, 0);
+        encryptor.finish(output, plaintext.length);
+        event.complete(ALGORITHM, modeName(), "encrypt", plaintext.length);
+        return output;
+    }
+
+    /**
+     * Verify and decrypt a message. No plaintext is returned unless the authentication tag is valid.
+     *
+     * @param nonce the nonce that the message was encrypted with.
+     * @param aad the additional authenticated data that the message was encrypted with.
+     * @param ciphertext the ciphertext followed by the 16 byte authentication tag.
+     * @return the plaintext.
+     * @throws InvalidNonceLengthException if the nonce is empty.
+     * @throws InvalidTagException if the ciphertext, AAD or nonce has been modified, or the tag is missing.
+     */
+    public byte[] decrypt(byte[] nonce, byte[] aad, byte[] ciphertext)
+            throws InvalidNonceLengthException, InvalidTagException {
+        if (ciphertext.length < TAG_LENGTH)
+            throw new InvalidTagException();
+        CipherOperationEvent event = new CipherOperationEvent();
+        event.begin();
+        int length = ciphertext.length - TAG_LENGTH;
+        byte[] output = new byte[length];
+        Decryptor decryptor = decryptor(nonce);
+        decryptor.updateAAD(aad);
+        decryptor.update(ciphertext, 0, length, output, 0);
+        try {
+            decryptor.verify(ciphertext, length);
+        } catch (InvalidTagException e) {
+            Arrays.fill(output, (byte) 0);
+            throw e;
+        }
+        event.complete(ALGORITHM, modeName(), "decrypt", length);
+        return output;
+    }
+
+    /**
+     * Create an encryptor for a message that is provided in several parts.
+     *
+     * @param nonce the nonce for this message, which should be 12 bytes long. See
+     *              {@link #encrypt(byte[], byte[], byte[])}.
+     * @return a new {@link Encryptor} for a single message.
+     * @throws InvalidNonceLengthException if the nonce is empty.
+     */
+    public Encryptor encryptor(byte[] nonce) throws InvalidNonceLengthException {
+        return new Encryptor(nonce);
+    }
+
+    /**
+     * Create a decryptor for a message that is provided in several parts.
+     *
+     * @param nonce the nonce that the message was encrypted with.
+     * @return a new {@link Decryptor} for a single message.
+     * @throws InvalidNonceLengthException if the nonce is empty.
+     */
+    public Decryptor decryptor(byte[] nonce) throws InvalidNonceLengthException {
+        return new Decryptor(nonce);
+    }
+
+    /**
+     * The state of a single message: the counter, the running GHASH value, and the lengths of the AAD and text.
+     * All AAD must be provided before the text. Instances are not thread-safe, and can not be reused once the
+     * message has been completed, since a nonce must never be used for more than one message.
+     */
+    public abstract class Session {
+
+        /** The pre-counter block J0. Its last 4 bytes are replaced by the counter for each keystream block. */
+        private final byte[] counterBlock = new byte[BLOCK_SZ];
+        private int counter;
+
+        /** The encryption of J0, which is XORed into the GHASH value to give the tag */
+        private final byte[] tagMask = new byte[BLOCK_SZ];
+
+        /** Scratch space for the encrypted counter blocks, and the number of bytes generated and used */
+        private final byte[] keystream = new byte[KEYSTREAM_BLOCKS * BLOCK_SZ];
+        private int keystreamLen;
+        private int keystreamPos;
+
+        /** The running GHASH value, and the trailing partial block of AAD or ciphertext that is not yet hashed */
+        private final long[] hash = new long[2];
+        private final byte[] partial = new byte[BLOCK_SZ];
+        private int partialLen;
+
+        private long aadLength;
+        private long textLength;
+        private boolean completed;
+
+        private Session(byte[] nonce) throws InvalidNonceLengthException {
+            if (nonce.length == 0)
+                throw new InvalidNonceLengthException();
+            if (nonce.length == NONCE_LENGTH) {
+                System.arraycopy(nonce, 0, counterBlock, 0, NONCE_LENGTH);
+                counterBlock[BLOCK_SZ - 1] = 1;
+            } else {
+                // Other nonce lengths are hashed, with the bit length of the nonce in the final block
+                long[] j0 = new long[2];
+                int whole = nonce.length - nonce.length % BLOCK_SZ;
+                ghash.absorb(j0, nonce, 0, whole);
+                if (whole < nonce.length) {
+                    byte[] last = Arrays.copyOfRange(nonce, whole, whole + BLOCK_SZ);
+                    ghash.absorb(j0, last, 0, BLOCK_SZ);
+                }
+                ghash.absorb(j0, 0, nonce.length * (long) Byte.SIZE);
+                intToBytes((int) (j0[0] >>> 32), counterBlock, 0);
+                intToBytes((int) j0[0], counterBlock, 4);
+                intToBytes((int) (j0[1] >>> 32), counterBlock, 8);
+                intToBytes((int) j0[1], counterBlock, 12);
+            }
+            counter = bytesToInt(counterBlock, BLOCK_SZ - 4);
+            encryptBlock(counterBlock, 0, tagMask, 0);
+        }
+
+        /**
+         * Add additional authenticated data, which is not encrypted.
+         *
+         * @param aad the additional data.
+         * @throws IllegalStateException if any text has been processed, or the message has been completed.
+         */
+        public void updateAAD(byte[] aad) {
+            updateAAD(aad, 0, aad.length);
+        }
+
+        /**
+         * Add additional authenticated data, which is not encrypted.
+         *
+         * @param aad the array holding the additional data.
+         * @param off the offset of the data in {@code aad}.
+         * @param len the length of the data.
+         * @throws IllegalStateException if any text has been processed, or the message has been completed.
+         * @throws IndexOutOfBoundsException if the data is out of bounds of the array.
+         */
+        public void updateAAD(byte[] aad, int off, int len) {
+            checkNotCompleted();
+            if (textLength > 0)
+                throw new IllegalStateException("All additional authenticated data must precede the text");
+            Objects.checkFromIndexSize(off, len, aad.length);
+            aadLength += len;
+            absorb(aad, off, len);
+        }
+
+        /**
+         * Process part of the text, writing exactly as many bytes of output. The input and output may refer to the
+         * same array, as long as the offsets are equal.
+         *
+         * @param input the array holding the input.
+         * @param inOff the offset of the input in {@code input}.
+         * @param len the length of the input.
+         * @param output the array to write the output to.
+         * @param outOff the offset at which to write the output.
+         * @return the number of bytes written, which is {@code len}.
+         * @throws IllegalStateException if the message has been completed.
+         * @throws IllegalArgumentException if the message would exceed the maximum length of about 64 GB.
+         * @throws IndexOutOfBoundsException if the input or output is out of bounds of its array.
+         */
+        public int update(byte[] input, int inOff, int len, byte[] output, int outOff) {
+            checkNotCompleted();
+            Objects.checkFromIndexSize(inOff, len, input.length);
+            Objects.checkFromIndexSize(outOff, len, output.length);
+            if (len == 0)
+                return 0;
+            if (textLength + len > MAX_TEXT_LENGTH)
+                throw new IllegalArgumentException("GCM messages are limited to " + MAX_TEXT_LENGTH + " bytes");
+            // The AAD is padded to a whole number of blocks before the text
+            if (textLength == 0)
+                absorbPartial();
+            textLength += len;
+
+            for (int i = 0; i < len; ) {
+                if (keystreamPos == keystreamLen) {
+                    keystreamLen = generateKeystream(len - i);
+                    keystreamPos = 0;
+                }
+                int n = Math.min(len - i, keystreamLen - keystreamPos);
+                process(input, inOff + i, output, outOff + i, n);
+                keystreamPos += n;
+                i += n;
+            }
+            return len;
+        }
+
+        /**
+         * Process part of the text.
+         *
+         * @param input the input.
+         * @return the output, which has the same length as the input.
+         * @throws IllegalStateException if the message has been completed.
+         */
+        public byte[] update(byte[] input) {
+            byte[] output = new byte[input.length];
+            update(input, 0, input.length, output, 0);
+            return output;
+        }
+
+        /** XOR n bytes of input with the keystream at the current position, and hash the ciphertext */
+        abstract void process(byte[] in, int inOff, byte[] out, int outOff, int n);
+
+        /** XOR n bytes of input with the keystream at the current position */
+        final void applyKeystream(byte[] in, int inOff, byte[] out, int outOff, int n) {
+            xor(in, inOff, keystream, keystreamPos, out, outOff, n);
+        }
+
+        /**
+         * Encrypt the next counter blocks into the keystream array, generating enough blocks for len bytes of input
+         * but at most as many as fit in the array. Only the last 32 bits of the counter block are incremented.
+         *
+         * @return the number of bytes of keystream generated.
+         */
+        private int generateKeystream(int len) {
+            int generated = Math.min(keystream.length, (len + BLOCK_SZ - 1) / BLOCK_SZ * BLOCK_SZ);
+            for (int i = 0; i < generated; i += BLOCK_SZ) {
+                System.arraycopy(counterBlock, 0, keystream, i, BLOCK_SZ - 4);
+                intToBytes(++counter, keystream, i + BLOCK_SZ - 4);
+                encryptBlock(keystream, i, keystream, i);
+            }
+            return generated;
+        }
+
+        /** Hash the given AAD or ciphertext, buffering any trailing partial block */
+        final void absorb(byte[] data, int off, int len) {
+            if (partialLen > 0) {
+                int n = Math.min(len, BLOCK_SZ - partialLen);
+                System.arraycopy(data, off, partial, partialLen, n);
+                partialLen += n;
+                off += n;
+                len -= n;
+                if (partialLen < BLOCK_SZ)
+                    return;
+                ghash.absorb(hash, partial, 0, BLOCK_SZ);
+                partialLen = 0;
+            }
+            int whole = len - len % BLOCK_SZ;
+            ghash.absorb(hash, data, off, whole);
+            System.arraycopy(data, off + whole, partial, 0, len - whole);
+            partialLen = len - whole;
+        }
+
+        /** Hash the buffered partial block padded with zeroes, if there is one */
+        private void absorbPartial() {
+            if (partialLen > 0) {
+                Arrays.fill(partial, partialLen, BLOCK_SZ, (byte) 0);
+                ghash.absorb(hash, partial, 0, BLOCK_SZ);
+                partialLen = 0;
+            }
+        }
+
+        /** Complete the message and compute the tag, after which the session can not be used any more */
+        final void computeTag(byte[] tag, int off) {
+            checkNotCompleted();
+            completed = true;
+            absorbPartial();
+            ghash.absorb(hash, aadLength * Byte.SIZE, textLength * Byte.SIZE);
+            intToBytes((int) (hash[0] >>> 32), tag, off);
+            intToBytes((int) hash[0], tag, off + 4);
+            intToBytes((int) (hash[1] >>> 32), tag, off + 8);
+            intToBytes((int) hash[1], tag, off + 12);
+            xor(tag, off, tagMask, 0, tag, off, TAG_LENGTH);
+
+            Arrays.fill(keystream, (byte) 0);
+            Arrays.fill(partial, (byte) 0);
+            Arrays.fill(hash, 0);
+        }
+
+        private void checkNotCompleted() {
+            if (completed)
+                throw new IllegalStateException("The message has already been completed");
+        }
+    }
+
+    /**
+     * Incremental encryption of a single message, see {@link Session}.
+     */
+    public final class Encryptor extends Session {
+
+        private Encryptor(byte[] nonce) throws InvalidNonceLengthException {
+            super(nonce);
+        }
+
+        @Override
+        void process(byte[] in, int inOff, byte[] out, int outOff, int n) {
+            applyKeystream(in, inOff, out, outOff, n);
+            absorb(out, outOff, n);
+        }
+
+        /**
+         * Complete the message.
+         *
+         * @return the 16 byte authentication tag, which should be sent along with the ciphertext.
+         * @throws IllegalStateException if the message has already been completed.
+         */
+        public byte[] finish() {
+            byte[] tag = new byte[TAG_LENGTH];
+            computeTag(tag, 0);
+            return tag;
+        }
+
+        /**
+         * Complete the message, writing the authentication tag to the given array.
+         *
+         * @param output the array to write the tag to.
+         * @param off the offset at which to write the tag.
+         * @return the number of bytes written, which is 16.
+         * @throws IllegalStateException if the message has already been completed.
+         * @throws IndexOutOfBoundsException if there is not enough space for the tag in the array.
+         */
+        public int finish(byte[] output, int off) {
+            Objects.checkFromIndexSize(off, TAG_LENGTH, output.length);
+            computeTag(output, off);
+            return TAG_LENGTH;
+        }
+    }
+
+    /**
+     * Incremental decryption of a single message, see {@link Session}. Note that the plaintext returned by
+     * {@link #update} has not been authenticated, and must not be acted upon until {@link #verify} has succeeded.
+     */
+    public final class Decryptor extends Session {
+
+        private final byte[] expected = new byte[TAG_LENGTH];
+
+        private Decryptor(byte[] nonce) throws InvalidNonceLengthException {
+            super(nonce);
+        }
+
+        @Override
+        void process(byte[] in, int inOff, byte[] out, int outOff, int n) {
+            // The ciphertext is hashed first, since it is overwritten when decrypting in place
+            absorb(in, inOff, n);
+            applyKeystream(in, inOff, out, outOff, n);
+        }
+
+        /**
+         * Complete the message and verify its authentication tag.
+         *
+         * @param tag the 16 byte authentication tag that was sent along with the ciphertext.
+         * @throws InvalidTagException if the tag does not match the message.
+         * @throws IllegalStateException if the message has already been completed.
+         */
+        public void verify(byte[] tag) throws InvalidTagException {
+            if (tag.length != TAG_LENGTH)
+                throw new InvalidTagException();
+            verify(tag, 0);
+        }
+
+        /**
+         * Complete the message and verify its authentication tag.
+         *
+         * @param tag the array holding the 16 byte authentication tag.
+         * @param off the offset of the tag in the array.
+         * @throws InvalidTagException if the tag does not match the message.
+         * @throws IllegalStateException if the message has already been completed.
+         * @throws IndexOutOfBoundsException if the tag is out of bounds of the array.
+         */
+        public void verify(byte[] tag, int off) throws InvalidTagException {
+            Objects.checkFromIndexSize(off, TAG_LENGTH, tag.length);
+            computeTag(expected, 0);
+            // All bytes are compared regardless of where the first difference is, to not leak it through timing
+            int difference = 0;
+            for (int i = 0; i < TAG_LENGTH; i++)
+                difference |= expected[i] ^ tag[off + i];
+            Arrays.fill(expected, (byte) 0);
+            if (difference != 0)
+                throw new InvalidTagException();
+        }
+    }
+
+    public static class InvalidNonceLengthException extends Exception {
+        public InvalidNonceLengthException() {
+            super("The nonce must not be empty. The recommended length is " + NONCE_LENGTH + " bytes.");
+        }
+    }
+
+    public static class InvalidTagException extends Exception {
+        public InvalidTagException() {
+            super("The authentication tag does not match the message");
+        }
+    }
+}
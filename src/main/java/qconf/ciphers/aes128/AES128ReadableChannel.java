@@ -0,0 +1,94 @@
+package qconf.ciphers.aes128;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * A channel that reads data from an underlying channel and applies an AES-128 mode of operation to it before
+ * returning it. Data is processed in a fixed size internal buffer, so the amount of memory used does not depend
+ * on the amount of data read.
+ *
+ * @author Gabriel Skoglund
+ */
+class AES128ReadableChannel implements ReadableByteChannel {
+
+    private final ReadableByteChannel source;
+    private final AES128.Operation operation;
+    private final int granularity;
+    private final byte[] buffer = new byte[AES128.SCRATCH_SZ];
+
+    /** Processed data is held in buffer[position, processed), followed by unprocessed data up to filled */
+    private int position;
+    private int processed;
+    private int filled;
+    private boolean endOfStream;
+    private boolean open = true;
+
+    /**
+     * @param source      the channel to read data from.
+     * @param operation   the operation to apply to the data.
+     * @param granularity the number of bytes the operation must be applied to at a time.
+     */
+    AES128ReadableChannel(ReadableByteChannel source, AES128.Operation operation, int granularity) {
+        this.source = source;
+        this.operation = operation;
+        this.granularity = granularity;
+    }
+
+    /**
+     * @throws IOException if the data in the underlying channel was not a multiple of the block size of the mode, or
+     *                     if reading from the underlying channel failed.
+     */
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        if (!open)
+            throw new ClosedChannelException();
+
+        if (position == processed && !fill())
+            return endOfStream ? -1 : 0;
+
+        int n = Math.min(dst.remaining(), processed - position);
+        dst.put(buffer, position, n);
+        position += n;
+        return n;
+    }
+
+    /**
+     * Read more data from the underlying channel and process it.
+     * @return true if there is processed data available.
+     */
+    private boolean fill() throws IOException {
+        System.arraycopy(buffer, processed, buffer, 0, filled - processed);
+        filled -= processed;
+        position = processed = 0;
+
+        while (!endOfStream && filled < granularity) {
+            int n = source.read(ByteBuffer.wrap(buffer, filled, buffer.length - filled));
+            if (n == 0)
+                break;
+            if (n < 0)
+                endOfStream = true;
+            else
+                filled += n;
+        }
+        if (endOfStream && filled % granularity != 0)
+            throw new IOException(new AES128BlockMode.InvalidInputLengthException(filled));
+
+        processed = filled - filled % granularity;
+        operation.apply(buffer, 0, buffer, 0, processed);
+        return processed > 0;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() throws IOException {
+        open = false;
+        source.close();
+    }
+}
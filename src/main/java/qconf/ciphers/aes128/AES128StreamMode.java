@@ -1,5 +1,11 @@
 package qconf.ciphers.aes128;
 
+import qconf.jfr.CipherOperationEvent;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
 /**
  * Class representing AES stream modes of operations.
  *
@@ -8,15 +14,144 @@ package qconf.ciphers.aes128;
 public abstract class AES128StreamMode extends AES128 {
     AES128StreamMode(Key key) { super(key); }
 
+    AES128StreamMode(Key.Schedule schedule) { super(schedule); }
+
     /**
      * @param plaintext the plaintext to be encrypted.
      * @return a byte array containing the encrypted form of the plaintext.
      */
-    public abstract byte[] encrypt(byte[] plaintext);
+    public byte[] encrypt(byte[] plaintext) {
+        CipherOperationEvent event = new CipherOperationEvent();
+        event.begin();
+        byte[] output = new byte[plaintext.length];
+        startMessage();
+        encrypt(plaintext, 0, output, 0, plaintext.length);
+        event.complete(ALGORITHM, modeName(), "encrypt", plaintext.length);
+        return output;
+    }
 
     /**
      * @param ciphertext the ciphertext to be decrypted.
      * @return a byte array containing the decrypted form of the ciphertext.
      */
-    public abstract byte[] decrypt(byte[] ciphertext);
+    public byte[] decrypt(byte[] ciphertext) {
+        CipherOperationEvent event = new CipherOperationEvent();
+        event.begin();
+        byte[] output = new byte[ciphertext.length];
+        startMessage();
+        decrypt(ciphertext, 0, output, 0, ciphertext.length);
+        event.complete(ALGORITHM, modeName(), "decrypt", ciphertext.length);
+        return output;
+    }
+
+    /**
+     * Encrypt the remaining bytes of src into dst. Both heap and direct buffers are supported. The buffers may be
+     * the same buffer, but must otherwise not overlap.
+     *
+     * @param src the plaintext to be encrypted. Its position will be advanced to its limit.
+     * @param dst the buffer to write the ciphertext to. Its position will be advanced by the length of the input.
+     * @throws java.nio.BufferOverflowException if there is not enough space remaining in dst.
+     */
+    public void encrypt(ByteBuffer src, ByteBuffer dst) {
+        CipherOperationEvent event = new CipherOperationEvent();
+        event.begin();
+        int len = src.remaining();
+        startMessage();
+        transform(src, dst, this::encrypt);
+        event.complete(ALGORITHM, modeName(), "encrypt", len);
+    }
+
+    /**
+     * Decrypt the remaining bytes of src into dst. Both heap and direct buffers are supported. The buffers may be
+     * the same buffer, but must otherwise not overlap.
+     *
+     * @param src the ciphertext to be decrypted. Its position will be advanced to its limit.
+     * @param dst the buffer to write the plaintext to. Its position will be advanced by the length of the input.
+     * @throws java.nio.BufferOverflowException if there is not enough space remaining in dst.
+     */
+    public void decrypt(ByteBuffer src, ByteBuffer dst) {
+        CipherOperationEvent event = new CipherOperationEvent();
+        event.begin();
+        int len = src.remaining();
+        startMessage();
+        transform(src, dst, this::decrypt);
+        event.complete(ALGORITHM, modeName(), "decrypt", len);
+    }
+
+    /**
+     * Create a channel that encrypts all data written to it before writing it to the given channel.
+     * The cipher should not be used for anything else while the channel is open.
+     *
+     * @param sink the (blocking) channel to write the ciphertext to.
+     * @return a channel accepting plaintext.
+     */
+    public WritableByteChannel encryptingChannel(WritableByteChannel sink) {
+        startMessage();
+        return new AES128WritableChannel(sink, this::encrypt, 1);
+    }
+
+    /**
+     * Create a channel that decrypts all data written to it before writing it to the given channel.
+     * The cipher should not be used for anything else while the channel is open.
+     *
+     * @param sink the (blocking) channel to write the plaintext to.
+     * @return a channel accepting ciphertext.
+     */
+    public WritableByteChannel decryptingChannel(WritableByteChannel sink) {
+        startMessage();
+        return new AES128WritableChannel(sink, this::decrypt, 1);
+    }
+
+    /**
+     * Create a channel that reads data from the given channel and returns it in encrypted form.
+     * The cipher should not be used for anything else while the channel is open.
+     *
+     * @param source the channel to read plaintext from.
+     * @return a channel providing ciphertext.
+     */
+    public ReadableByteChannel encryptingChannel(ReadableByteChannel source) {
+        startMessage();
+        return new AES128ReadableChannel(source, this::encrypt, 1);
+    }
+
+    /**
+     * Create a channel that reads data from the given channel and returns it in decrypted form.
+     * The cipher should not be used for anything else while the channel is open.
+     *
+     * @param source the channel to read ciphertext from.
+     * @return a channel providing plaintext.
+     */
+    public ReadableByteChannel decryptingChannel(ReadableByteChannel source) {
+        startMessage();
+        return new AES128ReadableChannel(source, this::decrypt, 1);
+    }
+
+    /**
+     * Create an incremental encryptor, which encrypts a message that is provided in several parts.
+     * The cipher should not be used for anything else until the encryption has been completed.
+     *
+     * @return a new {@link IncrementalCipher} for encryption.
+     */
+    public IncrementalCipher encryptor() {
+        return new IncrementalCipher(this::encrypt, this::startMessage, IncrementalCipher.Padding.NONE);
+    }
+
+    /**
+     * Create an incremental decryptor, which decrypts a message that is provided in several parts.
+     * The cipher should not be used for anything else until the decryption has been completed.
+     *
+     * @return a new {@link IncrementalCipher} for decryption.
+     */
+    public IncrementalCipher decryptor() {
+        return new IncrementalCipher(this::decrypt, this::startMessage, IncrementalCipher.Padding.NONE);
+    }
+
+    /** Reset any state carried between operations, so that the next operation starts a new message. */
+    abstract void startMessage();
+
+    /** Encrypt len bytes, continuing the current message. */
+    abstract void encrypt(byte[] in, int inOff, byte[] out, int outOff, int len);
+
+    /** Decrypt len bytes, continuing the current message. */
+    abstract void decrypt(byte[] in, int inOff, byte[] out, int outOff, int len);
 }
@@ -0,0 +1,81 @@
+package qconf.ciphers.aes128;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A channel that applies an AES-128 mode of operation to all data written to it, before passing the result on to an
+ * underlying channel. Data is processed in a fixed size internal buffer, so the amount of memory used does not depend
+ * on the amount of data written.
+ *
+ * @author Gabriel Skoglund
+ */
+class AES128WritableChannel implements WritableByteChannel {
+
+    private final WritableByteChannel sink;
+    private final AES128.Operation operation;
+    private final int granularity;
+    private final byte[] buffer = new byte[AES128.SCRATCH_SZ];
+
+    /** The number of bytes in the buffer that have not yet been processed */
+    private int buffered;
+    private boolean open = true;
+
+    /**
+     * @param sink        the channel to write the processed data to.
+     * @param operation   the operation to apply to the data.
+     * @param granularity the number of bytes the operation must be applied to at a time.
+     */
+    AES128WritableChannel(WritableByteChannel sink, AES128.Operation operation, int granularity) {
+        this.sink = sink;
+        this.operation = operation;
+        this.granularity = granularity;
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        if (!open)
+            throw new ClosedChannelException();
+
+        int written = 0;
+        while (src.hasRemaining()) {
+            int n = Math.min(src.remaining(), buffer.length - buffered);
+            src.get(buffer, buffered, n);
+            buffered += n;
+            written += n;
+
+            // Process as much as possible, keeping any partial block for the next write
+            int ready = buffered - buffered % granularity;
+            operation.apply(buffer, 0, buffer, 0, ready);
+            ByteBuffer output = ByteBuffer.wrap(buffer, 0, ready);
+            while (output.hasRemaining())
+                sink.write(output);
+            System.arraycopy(buffer, ready, buffer, 0, buffered - ready);
+            buffered -= ready;
+        }
+        return written;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Close this channel and the underlying channel.
+     *
+     * @throws IOException if the data written was not a multiple of the block size of the mode, or if the
+     *                     underlying channel could not be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!open)
+            return;
+        open = false;
+        sink.close();
+        if (buffered != 0)
+            throw new IOException(new AES128BlockMode.InvalidInputLengthException(buffered));
+    }
+}
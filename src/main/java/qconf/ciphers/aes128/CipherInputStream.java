@@ -0,0 +1,92 @@
+package qconf.ciphers.aes128;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An input stream that reads data from an underlying input stream and encrypts or decrypts it using an
+ * {@link IncrementalCipher}. The message is completed when the end of the underlying stream is reached. Data is
+ * processed in a fixed size buffer, so memory usage does not depend on the length of the message.
+ *
+ * @author Gabriel Skoglund
+ */
+public class CipherInputStream extends FilterInputStream {
+
+    private final IncrementalCipher cipher;
+    private final byte[] input = new byte[AES128.SCRATCH_SZ];
+    private final byte[] output = new byte[AES128.SCRATCH_SZ + AES128.BLOCK_SZ];
+    private final byte[] singleByte = new byte[1];
+
+    /** Output that has not yet been returned is held in output[position, limit) */
+    private int position;
+    private int limit;
+    private boolean finished;
+
+    /**
+     * @param in     the input stream to read the input of the cipher from.
+     * @param cipher the cipher to apply to the data read from the underlying stream.
+     */
+    public CipherInputStream(InputStream in, IncrementalCipher cipher) {
+        super(in);
+        this.cipher = cipher;
+    }
+
+    @Override
+    public int read() throws IOException {
+        return read(singleByte, 0, 1) < 0 ? -1 : singleByte[0] & 0xff;
+    }
+
+    /**
+     * @throws IOException if reading from the underlying stream failed, or if the message could not be completed.
+     */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0)
+            return 0;
+        while (position == limit) {
+            if (finished)
+                return -1;
+            fill();
+        }
+        int n = Math.min(len, limit - position);
+        System.arraycopy(output, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    /** Read more input from the underlying stream and process it */
+    private void fill() throws IOException {
+        position = 0;
+        int n = in.read(input);
+        if (n >= 0) {
+            limit = cipher.update(input, 0, n, output, 0);
+            return;
+        }
+        finished = true;
+        try {
+            limit = cipher.doFinal(output, 0);
+        } catch (AES128BlockMode.InvalidInputLengthException | AES128BlockMode.InvalidPaddingException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        // Skipped bytes still need to pass through the cipher, so we cannot skip in the underlying stream
+        long skipped = 0;
+        while (skipped < n && read() >= 0)
+            skipped++;
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return limit - position;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+}
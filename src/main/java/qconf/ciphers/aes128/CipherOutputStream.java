@@ -0,0 +1,63 @@
+package qconf.ciphers.aes128;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * An output stream that encrypts or decrypts all data written to it using an {@link IncrementalCipher}, before
+ * writing it to an underlying output stream. The message is completed when the stream is closed. Data is processed
+ * in a fixed size buffer, so memory usage does not depend on the length of the message.
+ *
+ * @author Gabriel Skoglund
+ */
+public class CipherOutputStream extends FilterOutputStream {
+
+    private final IncrementalCipher cipher;
+    private final byte[] output = new byte[AES128.SCRATCH_SZ + AES128.BLOCK_SZ];
+    private final byte[] singleByte = new byte[1];
+    private boolean closed;
+
+    /**
+     * @param out    the output stream to write the output of the cipher to.
+     * @param cipher the cipher to apply to the data written to this stream.
+     */
+    public CipherOutputStream(OutputStream out, IncrementalCipher cipher) {
+        super(out);
+        this.cipher = cipher;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        singleByte[0] = (byte) b;
+        write(singleByte, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (closed)
+            throw new IOException("Stream closed");
+        for (int i = 0; i < len; i += AES128.SCRATCH_SZ) {
+            int n = cipher.update(b, off + i, Math.min(AES128.SCRATCH_SZ, len - i), output, 0);
+            out.write(output, 0, n);
+        }
+    }
+
+    /**
+     * Complete the message and close the underlying stream.
+     *
+     * @throws IOException if the message could not be completed, or if writing to the underlying stream failed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        try (OutputStream sink = out) {
+            sink.write(output, 0, cipher.doFinal(output, 0));
+            sink.flush();
+        } catch (AES128BlockMode.InvalidInputLengthException | AES128BlockMode.InvalidPaddingException e) {
+            throw new IOException(e);
+        }
+    }
+}
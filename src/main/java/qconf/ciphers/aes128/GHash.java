@@ -0,0 +1,113 @@
+package qconf.ciphers.aes128;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * The GHASH function of GCM (see NIST SP 800-38D, section 6.4), multiplying by a fixed hash subkey H in GF(2^128).
+ * <p>
+ * Multiplication uses Shoup's method with 8-bit tables: the products of H with all 256 possible bytes are
+ * precomputed when the key is set up, so that multiplying a block by H takes 16 table lookups, each followed by a
+ * multiplication by x^8 whose reduction is also looked up in a table. Field elements are stored as two longs holding
+ * the big endian halves of the block, so that with the bit order of GCM, multiplication by x is a right shift.
+ * <p>
+ * Instances only hold the tables for H, and may be shared between threads. The running hash value is kept by the
+ * caller as an array of two longs.
+ *
+ * @author Gabriel Skoglund
+ */
+final class GHash {
+
+    /** The reduction polynomial x^128 + x^7 + x^2 + x + 1, as the bits that are XORed into the upper half */
+    private static final long R = 0xe100000000000000L;
+
+    /** The reduction of each possible byte shifted out by a multiplication by x^8, XORed into the upper half */
+    private static final long[] REDUCE = new long[256];
+
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    static {
+        for (int b = 0; b < 256; b++) {
+            long hi = 0, lo = b;
+            for (int i = 0; i < Byte.SIZE; i++) {
+                long carry = -(lo & 1) & R;
+                lo = (lo >>> 1) | (hi << 63);
+                hi = (hi >>> 1) ^ carry;
+            }
+            REDUCE[b] = hi;
+        }
+    }
+
+    /** The products of H and each byte value, where the most significant bit of a byte is the coefficient of 1 */
+    private final long[] tableHi = new long[256];
+    private final long[] tableLo = new long[256];
+
+    /**
+     * @param h the 16 byte hash subkey, i.e. the encryption of the zero block.
+     */
+    GHash(byte[] h) {
+        long hi = (long) LONGS.get(h, 0);
+        long lo = (long) LONGS.get(h, 8);
+
+        // The byte 0x80 is the field element 1, and each bit further right is a further multiplication by x
+        for (int i = 0x80; i > 0; i >>>= 1) {
+            tableHi[i] = hi;
+            tableLo[i] = lo;
+            long carry = -(lo & 1) & R;
+            lo = (lo >>> 1) | (hi << 63);
+            hi = (hi >>> 1) ^ carry;
+        }
+        // Multiplication distributes over addition (XOR), which gives the remaining entries
+        for (int i = 2; i < 256; i <<= 1) {
+            for (int j = 1; j < i; j++) {
+                tableHi[i + j] = tableHi[i] ^ tableHi[j];
+                tableLo[i + j] = tableLo[i] ^ tableLo[j];
+            }
+        }
+    }
+
+    /**
+     * Absorb whole blocks into the hash value, computing y = (y ^ block) * H for each block.
+     *
+     * @param y the hash value as the upper and lower 64 bits, which is updated.
+     * @param in the array holding the blocks.
+     * @param off the offset of the first block.
+     * @param len the length of the blocks, which must be a multiple of 16.
+     */
+    void absorb(long[] y, byte[] in, int off, int len) {
+        for (int end = off + len; off < end; off += AES128.BLOCK_SZ)
+            multiply(y, y[0] ^ (long) LONGS.get(in, off), y[1] ^ (long) LONGS.get(in, off + 8));
+    }
+
+    /**
+     * Absorb a single block given as its upper and lower 64 bits, computing y = (y ^ block) * H.
+     *
+     * @param y the hash value as the upper and lower 64 bits, which is updated.
+     */
+    void absorb(long[] y, long blockHi, long blockLo) {
+        multiply(y, y[0] ^ blockHi, y[1] ^ blockLo);
+    }
+
+    /**
+     * Multiply x by H using Horner's rule over the bytes of x, starting with the last byte (the highest powers),
+     * and store the product in z.
+     */
+    private void multiply(long[] z, long xHi, long xLo) {
+        long zHi = 0, zLo = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += Byte.SIZE) {
+            int b = (int) (xLo >>> shift) & 0xff;
+            int reduce = (int) zLo & 0xff;
+            zLo = ((zLo >>> 8) | (zHi << 56)) ^ tableLo[b];
+            zHi = (zHi >>> 8) ^ REDUCE[reduce] ^ tableHi[b];
+        }
+        for (int shift = 0; shift < Long.SIZE; shift += Byte.SIZE) {
+            int b = (int) (xHi >>> shift) & 0xff;
+            int reduce = (int) zLo & 0xff;
+            zLo = ((zLo >>> 8) | (zHi << 56)) ^ tableLo[b];
+            zHi = (zHi >>> 8) ^ REDUCE[reduce] ^ tableHi[b];
+        }
+        z[0] = zHi;
+        z[1] = zLo;
+    }
+}
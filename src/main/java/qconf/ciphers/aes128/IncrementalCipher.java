@@ -0,0 +1,186 @@
+package qconf.ciphers.aes128;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Incremental encryption or decryption of a message that is provided in several parts, for instance when the message
+ * is too large to be kept in memory. Each call to {@link #update} returns as much output as possible, carrying any
+ * partial block and the chaining state of the mode over to the next call, and {@link #doFinal} completes the message.
+ * After {@link #doFinal}, the instance may be used for a new message.
+ * <p>
+ * For block modes, the message is padded according to PKCS#7, so messages of any length can be encrypted.
+ * Instances are created using the {@code encryptor()} and {@code decryptor()} methods of the modes of operation.
+ *
+ * @author Gabriel Skoglund
+ */
+public class IncrementalCipher {
+
+    /** How the mode of operation handles padding. */
+    enum Padding { NONE, ADD, REMOVE }
+
+    private final AES128.Operation operation;
+    private final Runnable startMessage;
+    private final Padding padding;
+
+    /** The number of bytes that the operation must be applied to at a time */
+    private final int granularity;
+
+    /** Input that has not yet been processed. When removing padding, this may be a full block. */
+    private final byte[] buffer = new byte[AES128.BLOCK_SZ];
+    private int buffered;
+
+    /** The total number of bytes of input to the current message */
+    private long inputLength;
+
+    IncrementalCipher(AES128.Operation operation, Runnable startMessage, Padding padding) {
+        this.operation = operation;
+        this.startMessage = startMessage;
+        this.padding = padding;
+        this.granularity = padding == Padding.NONE ? 1 : AES128.BLOCK_SZ;
+        startMessage.run();
+    }
+
+    /**
+     * @param inputLength the length of the input to a call to {@link #update}.
+     * @return the maximum number of bytes that the call could output.
+     */
+    public int getOutputSize(int inputLength) {
+        int available = buffered + inputLength;
+        return available - available % granularity;
+    }
+
+    /**
+     * Process part of the message.
+     *
+     * @param input the array holding the input.
+     * @param inOff the offset of the input in {@code input}.
+     * @param len the length of the input.
+     * @return the output produced, which may be shorter or longer than the input since only whole blocks are output.
+     */
+    public byte[] update(byte[] input, int inOff, int len) {
+        byte[] output = new byte[getOutputSize(len)];
+        int written = update(input, inOff, len, output, 0);
+        return written == output.length ? output : Arrays.copyOf(output, written);
+    }
+
+    /**
+     * Process part of the message, writing the output to the given array without allocating any memory. The input
+     * and output must not overlap.
+     *
+     * @param input the array holding the input.
+     * @param inOff the offset of the input in {@code input}.
+     * @param len the length of the input.
+     * @param output the array to write the output to. It must have space for at least {@link #getOutputSize} bytes.
+     * @param outOff the offset at which to write the output.
+     * @return the number of bytes written to the output.
+     * @throws IndexOutOfBoundsException if the input or output is out of bounds of its array.
+     */
+    public int update(byte[] input, int inOff, int len, byte[] output, int outOff) {
+        Objects.checkFromIndexSize(inOff, len, input.length);
+        inputLength += len;
+
+        int available = buffered + len;
+        int ready = available - available % granularity;
+        // When removing padding, the last block must be kept until we know that it really is the last block
+        if (padding == Padding.REMOVE && ready == available)
+            ready -= granularity;
+        if (ready <= 0) {
+            System.arraycopy(input, inOff, buffer, buffered, len);
+            buffered += len;
+            return 0;
+        }
+        Objects.checkFromIndexSize(outOff, ready, output.length);
+
+        // Complete the buffered block first (if there is one), then process whole blocks from the input
+        int consumed = 0;
+        int written = 0;
+        if (buffered > 0) {
+            consumed = AES128.BLOCK_SZ - buffered;
+            System.arraycopy(input, inOff, buffer, buffered, consumed);
+            operation.apply(buffer, 0, output, outOff, AES128.BLOCK_SZ);
+            written = AES128.BLOCK_SZ;
+        }
+        operation.apply(input, inOff + consumed, output, outOff + written, ready - written);
+        consumed += ready - written;
+
+        buffered = len - consumed;
+        System.arraycopy(input, inOff + consumed, buffer, 0, buffered);
+        return ready;
+    }
+
+    /**
+     * Complete the message.
+     *
+     * @return the remaining output.
+     * @throws AES128BlockMode.InvalidInputLengthException if decrypting with a block mode, and the length of the
+     *                                                     ciphertext is not a positive multiple of the block size.
+     * @throws AES128BlockMode.InvalidPaddingException if decrypting with a block mode, and the padding is invalid.
+     */
+    public byte[] doFinal() throws AES128BlockMode.InvalidInputLengthException,
+                                   AES128BlockMode.InvalidPaddingException {
+        byte[] output = new byte[AES128.BLOCK_SZ];
+        return Arrays.copyOf(output, doFinal(output, 0));
+    }
+
+    /**
+     * Complete the message, writing the remaining output to the given array.
+     *
+     * @param output the array to write the output to. It must have space for at least 16 bytes.
+     * @param outOff the offset at which to write the output.
+     * @return the number of bytes written to the output.
+     * @throws AES128BlockMode.InvalidInputLengthException if decrypting with a block mode, and the length of the
+     *                                                     ciphertext is not a positive multiple of the block size.
+     * @throws AES128BlockMode.InvalidPaddingException if decrypting with a block mode, and the padding is invalid.
+     */
+    public int doFinal(byte[] output, int outOff) throws AES128BlockMode.InvalidInputLengthException,
+                                                         AES128BlockMode.InvalidPaddingException {
+        try {
+            switch (padding) {
+                case ADD -> {
+                    // PKCS#7: pad with n bytes of value n, adding a full block if the message is block aligned
+                    Objects.checkFromIndexSize(outOff, AES128.BLOCK_SZ, output.length);
+                    byte padLength = (byte) (AES128.BLOCK_SZ - buffered);
+                    Arrays.fill(buffer, buffered, AES128.BLOCK_SZ, padLength);
+                    operation.apply(buffer, 0, output, outOff, AES128.BLOCK_SZ);
+                    return AES128.BLOCK_SZ;
+                }
+                case REMOVE -> {
+                    if (buffered != AES128.BLOCK_SZ)
+                        throw new AES128BlockMode.InvalidInputLengthException(inputLength);
+                    operation.apply(buffer, 0, buffer, 0, AES128.BLOCK_SZ);
+                    int messageLength = AES128.BLOCK_SZ - paddingLength(buffer);
+                    Objects.checkFromIndexSize(outOff, messageLength, output.length);
+                    System.arraycopy(buffer, 0, output, outOff, messageLength);
+                    return messageLength;
+                }
+                default -> {
+                    // Stream modes never buffer any input
+                    return 0;
+                }
+            }
+        } finally {
+            Arrays.fill(buffer, (byte) 0);
+            buffered = 0;
+            inputLength = 0;
+            startMessage.run();
+        }
+    }
+
+    /**
+     * Get the length of the PKCS#7 padding of the final block. All bytes of the block are inspected regardless of
+     * the padding length, to avoid leaking the length of the padding through timing.
+     */
+    private static int paddingLength(byte[] block) throws AES128BlockMode.InvalidPaddingException {
+        int padLength = block[AES128.BLOCK_SZ - 1] & 0xff;
+        int invalid = (padLength == 0 || padLength > AES128.BLOCK_SZ) ? 1 : 0;
+        for (int i = 0; i < AES128.BLOCK_SZ; i++) {
+            // Only bytes within the padding are required to equal the padding length
+            int inPadding = (AES128.BLOCK_SZ - 1 - i - padLength) >>> 31;
+            invalid |= inPadding & ((block[i] & 0xff) != padLength ? 1 : 0);
+        }
+        if (invalid != 0)
+            throw new AES128BlockMode.InvalidPaddingException();
+        return padLength;
+    }
+}
@@ -1,7 +1,6 @@
 package qconf.ciphers.aes128;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -35,42 +34,16 @@ public class Key {
 
     /** Expand this key into round keys */
     List<Key> expand() {
-        // We store the generated keys in a continuous array
-        byte[] keys = new byte[Key.LENGTH * (AES128.NUM_ROUNDS + 1)];
-        System.arraycopy(key, 0, keys, 0, Key.LENGTH);
+        int[] words = expandWords();
 
-        // rCon is a list of round constants
-        byte[][] rCon = {
-                { 0x01, 0x00, 0x00, 0x00},
-                { 0x02, 0x00, 0x00, 0x00},
-                { 0x04, 0x00, 0x00, 0x00},
-                { 0x08, 0x00, 0x00, 0x00},
-                { 0x10, 0x00, 0x00, 0x00},
-                { 0x20, 0x00, 0x00, 0x00},
-                { 0x40, 0x00, 0x00, 0x00},
-                {-0x80, 0x00, 0x00, 0x00},
-                { 0x1B, 0x00, 0x00, 0x00},
-                { 0x36, 0x00, 0x00, 0x00}
-        };
-
-        int bytesPerWord = 4;
-        for (int i = Key.LENGTH; i < Key.LENGTH * (AES128.NUM_ROUNDS + 1); i += bytesPerWord) {
-            // The word is a 4 byte section of a key
-            byte[] word = Arrays.copyOfRange(keys, i - bytesPerWord, i);
-            if (i % Key.LENGTH == 0) {
-                rotWord(word);
-                subWord(word);
-                xorWord(word, rCon[i / Key.LENGTH - 1]);
-            }
-            xorWord(word, Arrays.copyOfRange(keys, i - Key.LENGTH, i - Key.LENGTH + bytesPerWord));
-            System.arraycopy(word, 0, keys, i, bytesPerWord);
-        }
-
-        // Create key objects from sections of the key array
+        // Create key objects from groups of four words
         List<Key> ret = new ArrayList<>();
-        for (int i = 0; i < keys.length; i += Key.LENGTH) {
+        for (int i = 0; i < words.length; i += AES128.NUM_COLS) {
+            byte[] roundKey = new byte[Key.LENGTH];
+            for (int j = 0; j < AES128.NUM_COLS; j++)
+                AES128.intToBytes(words[i + j], roundKey, j * 4);
             try {
-                ret.add(new Key(Arrays.copyOfRange(keys, i, i + Key.LENGTH)));
+                ret.add(new Key(roundKey));
             } catch (Key.InvalidKeyException e) {
                 // This really shouldn't happen
                 throw new RuntimeException(e);
@@ -79,23 +52,63 @@ public class Key {
         return ret;
     }
 
-    /** Rotate a 4 byte word left by 1 byte */
-    private static void rotWord(byte[] word) {
-        byte first = word[0];
-        for (int i = 0; i < word.length - 1; i++)
-            word[i] = word[i + 1];
-        word[word.length - 1] = first;
+    /**
+     * Expand this key into round keys, stored as a continuous array of 32-bit big endian words
+     * with 4 words per round key.
+     */
+    int[] expandWords() {
+        int wordsPerKey = AES128.NUM_COLS;
+        int[] words = new int[wordsPerKey * (AES128.NUM_ROUNDS + 1)];
+        for (int i = 0; i < wordsPerKey; i++)
+            words[i] = AES128.bytesToInt(key, i * 4);
+
+        // The round constant, stored as the first byte of a word
+        int rCon = 0x01;
+        for (int i = wordsPerKey; i < words.length; i++) {
+            int word = words[i - 1];
+            if (i % wordsPerKey == 0) {
+                word = subWord(Integer.rotateLeft(word, Byte.SIZE)) ^ (rCon << 24);
+                rCon = AES128.xtime(rCon);
+            }
+            words[i] = words[i - wordsPerKey] ^ word;
+        }
+        return words;
     }
 
-    /** Apply the AES S-Box to a 4 byte word */
-    private static void subWord(byte[] word) {
-        for (int i = 0; i < word.length; i++)
-            word[i] = (byte) AES128.SBOX[word[i] & 0xff];
+    /**
+     * Expand this key into the round keys needed for both encryption and decryption. The decryption round keys
+     * are those of the equivalent inverse cipher, i.e. the encryption round keys in reverse order with
+     * InvMixColumns applied to all but the first and last of them.
+     */
+    Schedule expandSchedule() {
+        int wordsPerKey = AES128.NUM_COLS;
+        int[] encryptionKeys = expandWords();
+        int[] decryptionKeys = new int[encryptionKeys.length];
+        for (int round = 0; round <= AES128.NUM_ROUNDS; round++) {
+            int src = (AES128.NUM_ROUNDS - round) * wordsPerKey;
+            for (int j = 0; j < wordsPerKey; j++) {
+                int word = encryptionKeys[src + j];
+                boolean firstOrLast = round == 0 || round == AES128.NUM_ROUNDS;
+                decryptionKeys[round * wordsPerKey + j] = firstOrLast ? word : AES128.invMixColumn(word);
+            }
+        }
+        return new Schedule(encryptionKeys, decryptionKeys);
+    }
+
+    /** The expanded round keys of a key, as used by the AES128 cipher. */
+    static class Schedule {
+        final int[] encryptionKeys;
+        final int[] decryptionKeys;
+
+        Schedule(int[] encryptionKeys, int[] decryptionKeys) {
+            this.encryptionKeys = encryptionKeys;
+            this.decryptionKeys = decryptionKeys;
+        }
     }
 
-    /** XOR one 4 byte word into another */
-    private static void xorWord(byte[] word, byte[] other) {
-        for (int i = 0; i < word.length; i++)
-            word[i] ^= other[i];
+    /** Apply the AES S-Box to each byte of a 4 byte word */
+    private static int subWord(int word) {
+        return (AES128.SBOX[word >>> 24] << 24) | (AES128.SBOX[(word >>> 16) & 0xff] << 16) |
+               (AES128.SBOX[(word >>> 8) & 0xff] << 8) | AES128.SBOX[word & 0xff];
     }
 }
@@ -0,0 +1,141 @@
+package qconf.ciphers.aes128;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache of expanded AES-128 key schedules, for applications that switch between a large number of keys and
+ * create new cipher instances frequently. Each distinct key is expanded once, and all cipher instances created
+ * for that key share the same round keys. When the estimated size of the cached schedules exceeds the memory
+ * budget, the least recently used schedules are evicted.
+ * <p>
+ * Instances of this class are thread safe, although the cipher instances it creates are not, with the exception of
+ * {@link AES128Context} and {@link AES128GCM} instances.
+ *
+ * @author Gabriel Skoglund
+ */
+public class Keyring {
+
+    /**
+     * Rough estimate of the heap memory (in bytes) used by one cached schedule. This accounts for the two int arrays
+     * of round keys, the copy of the key material used for lookups and the overhead of the map entry.
+     */
+    public static final int BYTES_PER_SCHEDULE = 576;
+
+    private final Map<ByteBuffer, Key.Schedule> schedules;
+    private final long memoryBudget;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Create a new keyring.
+     *
+     * @param memoryBudget the maximum number of bytes to be used for cached key schedules. See
+     *                     {@link #BYTES_PER_SCHEDULE} for the (estimated) size of each schedule.
+     * @throws IllegalArgumentException if the budget is too small to hold even a single schedule.
+     */
+    public Keyring(long memoryBudget) {
+        if (memoryBudget < BYTES_PER_SCHEDULE)
+            throw new IllegalArgumentException("The memory budget must be at least " + BYTES_PER_SCHEDULE + " bytes");
+        this.memoryBudget = memoryBudget;
+        // An access ordered map keeps the least recently used schedule first
+        this.schedules = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ByteBuffer, Key.Schedule> eldest) {
+                if ((long) size() * BYTES_PER_SCHEDULE <= Keyring.this.memoryBudget)
+                    return false;
+                evictions++;
+                return true;
+            }
+        };
+    }
+
+    /**
+     * @param key the key to use for encryption/decryption.
+     * @return a new AES-128 ECB cipher instance, sharing the cached schedule for the given key.
+     */
+    public AES128ECB ecb(Key key) {
+        return new AES128ECB(schedule(key));
+    }
+
+    /**
+     * @param key                  the key to use for encryption/decryption.
+     * @param initializationVector the IV that will be used for the first step of the CBC decryption/encryption.
+     * @return a new AES-128 CBC cipher instance, sharing the cached schedule for the given key.
+     * @throws AES128CBC.InvalidInitializationVectorLengthException if the IV provided is not exactly 16 bytes.
+     */
+    public AES128CBC cbc(Key key, byte[] initializationVector)
+            throws AES128CBC.InvalidInitializationVectorLengthException {
+        return new AES128CBC(schedule(key), initializationVector);
+    }
+
+    /**
+     * @param key     the key to use for encryption/decryption.
+     * @param counter the initial counter value to use when encrypting/decrypting.
+     * @return a new AES-128 CTR cipher instance, sharing the cached schedule for the given key.
+     */
+    public AES128CTR ctr(Key key, AES128CTR.Counter counter) {
+        return new AES128CTR(schedule(key), counter);
+    }
+
+    /**
+     * @param key the key to use for encryption/decryption.
+     * @return a new AES-128 GCM cipher instance, sharing the cached schedule for the given key.
+     */
+    public AES128GCM gcm(Key key) {
+        return new AES128GCM(schedule(key));
+    }
+
+    /**
+     * @param key the key to use for encryption/decryption.
+     * @return a new thread-safe AES-128 cipher context, sharing the cached schedule for the given key.
+     */
+    public AES128Context context(Key key) {
+        return new AES128Context(schedule(key));
+    }
+
+    /** Get the schedule for the given key, expanding and caching it if it is not already present */
+    synchronized Key.Schedule schedule(Key key) {
+        Key.Schedule schedule = schedules.get(ByteBuffer.wrap(key.key));
+        if (schedule != null) {
+            hits++;
+            return schedule;
+        }
+        misses++;
+        schedule = key.expandSchedule();
+        // Copy the key material, since the caller may modify the array after the fact
+        schedules.put(ByteBuffer.wrap(Arrays.copyOf(key.key, Key.LENGTH)), schedule);
+        return schedule;
+    }
+
+    /**
+     * @return the number of cipher instances created using an already cached schedule.
+     */
+    public synchronized long hits() {
+        return hits;
+    }
+
+    /**
+     * @return the number of cipher instances that required a key to be expanded.
+     */
+    public synchronized long misses() {
+        return misses;
+    }
+
+    /**
+     * @return the number of schedules that have been evicted to stay within the memory budget.
+     */
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    /**
+     * @return the number of schedules currently cached.
+     */
+    public synchronized int size() {
+        return schedules.size();
+    }
+}
@@ -0,0 +1,423 @@
+package qconf.hashes;
+
+import qconf.jfr.HashOperationEvent;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * The BLAKE2s hash function as specified by RFC 7693, optimized for 32-bit words.
+ * The function turns byte input of any length into message digests of 1 to 32 bytes,
+ * and is considerably faster than SHA-256 in software. It is not a FIPS approved
+ * hash function.
+ * <p>
+ * BLAKE2s can be keyed with a key of up to 32 bytes, in which case it is a message
+ * authentication code, without the extra hashing of the key that HMAC needs.
+ * The key and the digest length are both part of the parameters of the hash function,
+ * so changing either of them gives unrelated digests.
+ *
+ * @author Gabriel Skoglund
+ */
+public class BLAKE2s implements HashFunction {
+
+    /** Maximum length of the message digest in bytes. */
+    public static final int MAX_DIGEST_LENGTH = 32;
+
+    /** Maximum length of the key in bytes. */
+    public static final int MAX_KEY_LENGTH = 32;
+
+    /** Block size in bytes */
+    private static final int BLOCK_SZ = 64;
+
+    /** Number of rounds for each message block */
+    public static final int NUM_ROUNDS = 10;
+
+    /** Initialization vector, which is the same as the initial hash value of SHA-256 */
+    private static final int[] IV = {
+            0x6a09e667, 0xbb67ae85, 0x3c6ef372, 0xa54ff53a, 0x510e527f, 0x9b05688c, 0x1f83d9ab, 0x5be0cd19
+    };
+
+    /** The message word permutation of each round */
+    private static final byte[][] SIGMA = {
+            {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15},
+            {14, 10, 4, 8, 9, 15, 13, 6, 1, 12, 0, 2, 11, 7, 5, 3},
+            {11, 8, 12, 0, 5, 2, 15, 13, 10, 14, 3, 6, 7, 1, 9, 4},
+            {7, 9, 3, 1, 13, 12, 11, 14, 2, 6, 5, 10, 4, 0, 15, 8},
+            {9, 0, 5, 7, 2, 4, 10, 15, 14, 1, 11, 12, 6, 8, 3, 13},
+            {2, 12, 6, 10, 0, 11, 8, 3, 4, 13, 7, 5, 15, 14, 1, 9},
+            {12, 5, 1, 15, 14, 13, 4, 10, 0, 7, 6, 3, 9, 2, 8, 11},
+            {13, 11, 7, 14, 12, 1, 3, 9, 5, 0, 15, 4, 8, 6, 2, 10},
+            {6, 15, 14, 9, 11, 3, 0, 8, 12, 2, 13, 7, 1, 4, 10, 5},
+            {10, 2, 8, 4, 7, 6, 1, 5, 15, 11, 9, 14, 3, 12, 13, 0}
+    };
+
+    /** View of a byte array as little endian ints, for reading the message words */
+    private static final VarHandle INTS = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final int digestLength;
+    private final byte[] key;
+
+    /**
+     * Create an unkeyed BLAKE2s instance with {@value #MAX_DIGEST_LENGTH} byte digests.
+     */
+    public BLAKE2s() {
+        this(MAX_DIGEST_LENGTH, new byte[0]);
+    }
+
+    /**
+     * Create an unkeyed BLAKE2s instance with the given digest length.
+     *
+     * @param digestLength the length of the digests in bytes, from 1 to {@value #MAX_DIGEST_LENGTH}.
+     * @throws IllegalArgumentException if the digest length is out of range.
+     */
+    public BLAKE2s(int digestLength) {
+        this(digestLength, new byte[0]);
+    }
+
+    /**
+     * Create a keyed BLAKE2s instance, computing message authentication codes.
+     *
+     * @param digestLength the length of the digests in bytes, from 1 to {@value #MAX_DIGEST_LENGTH}.
+     * @param key the key, of at most {@value #MAX_KEY_LENGTH} bytes. An empty key gives unkeyed hashing.
+     * @throws IllegalArgumentException if the digest length or key length is out of range.
+     */
+    public BLAKE2s(int digestLength, byte[] key) {
+        if (digestLength < 1 || digestLength > MAX_DIGEST_LENGTH)
+            throw new IllegalArgumentException("The digest length must be between 1 and " + MAX_DIGEST_LENGTH +
+                                               " bytes, but was " + digestLength);
+        if (key.length > MAX_KEY_LENGTH)
+            throw new IllegalArgumentException("The key must be at most " + MAX_KEY_LENGTH + " bytes, but was " +
+                                               key.length);
+        this.digestLength = digestLength;
+        this.key = key.clone();
+    }
+
+    @Override
+    public Digest digest(byte[] input) {
+        return newHasher().update(input).finish();
+    }
+
+    /**
+     * @return a new {@link Hasher} producing digests of the configured length.
+     */
+    @Override
+    public Hasher newHasher() {
+        return new BLAKE2sHasher(this);
+    }
+
+    /**
+     * Process a single message block, updating the chaining value. The working variables are kept in locals, and
+     * each iteration of the round loop applies the mixing function to the columns and then the diagonals, reading
+     * the message words in the order given by the permutation {@code SIGMA} of the round.
+     *
+     * @param h the chaining value.
+     * @param m an array of length 16 to hold the message words.
+     * @param block the array holding the message block.
+     * @param off the offset of the message block.
+     * @param counter the number of bytes of input hashed so far, including this block.
+     * @param last whether this is the final block.
+     */
+    private static void compress(int[] h, int[] m, byte[] block, int off, long counter, boolean last) {
+        // Message words are little endian
+        for (int i = 0; i < 16; i++)
+            m[i] = (int) INTS.get(block, off + i * Integer.BYTES);
+
+        int v0 = h[0], v1 = h[1], v2 = h[2], v3 = h[3], v4 = h[4], v5 = h[5], v6 = h[6], v7 = h[7];
+        int v8 = IV[0], v9 = IV[1], v10 = IV[2], v11 = IV[3];
+        int v12 = IV[4] ^ (int) counter;
+        int v13 = IV[5] ^ (int) (counter >>> 32);
+        int v14 = last ? ~IV[6] : IV[6];
+        int v15 = IV[7];
+
+        for (int round = 0; round < NUM_ROUNDS; round++) {
+            byte[] s = SIGMA[round];
+            // Columns
+            v0 += v4 + m[s[0]];
+            v12 = Integer.rotateRight(v12 ^ v0, 16);
+            v8 += v12;
+            v4 = Integer.rotateRight(v4 ^ v8, 12);
+            v0 += v4 + m[s[1]];
+            v12 = Integer.rotateRight(v12 ^ v0, 8);
+            v8 += v12;
+            v4 = Integer.rotateRight(v4 ^ v8, 7);
+            v1 += v5 + m[s[2]];
+            v13 = Integer.rotateRight(v13 ^ v1, 16);
+            v9 += v13;
+            v5 = Integer.rotateRight(v5 ^ v9, 12);
+            v1 += v5 + m[s[3]];
+            v13 = Integer.rotateRight(v13 ^ v1, 8);
+            v9 += v13;
+            v5 = Integer.rotateRight(v5 ^ v9, 7);
+            v2 += v6 + m[s[4]];
+            v14 = Integer.rotateRight(v14 ^ v2, 16);
+            v10 += v14;
+            v6 = Integer.rotateRight(v6 ^ v10, 12);
+            v2 += v6 + m[s[5]];
+            v14 = Integer.rotateRight(v14 ^ v2, 8);
+            v10 += v14;
+            v6 = Integer.rotateRight(v6 ^ v10, 7);
+            v3 += v7 + m[s[6]];
+            v15 = Integer.rotateRight(v15 ^ v3, 16);
+            v11 += v15;
+            v7 = Integer.rotateRight(v7 ^ v11, 12);
+            v3 += v7 + m[s[7]];
+            v15 = Integer.rotateRight(v15 ^ v3, 8);
+            v11 += v15;
+            v7 = Integer.rotateRight(v7 ^ v11, 7);
+            // Diagonals
+            v0 += v5 + m[s[8]];
+            v15 = Integer.rotateRight(v15 ^ v0, 16);
+            v10 += v15;
+            v5 = Integer.rotateRight(v5 ^ v10, 12);
+            v0 += v5 + m[s[9]];
+            v15 = Integer.rotateRight(v15 ^ v0, 8);
+            v10 += v15;
+            v5 = Integer.rotateRight(v5 ^ v10, 7);
+            v1 += v6 + m[s[10]];
+            v12 = Integer.rotateRight(v12 ^ v1, 16);
+            v11 += v12;
+            v6 = Integer.rotateRight(v6 ^ v11, 12);
+            v1 += v6 + m[s[11]];
+            v12 = Integer.rotateRight(v12 ^ v1, 8);
+            v11 += v12;
+            v6 = Integer.rotateRight(v6 ^ v11, 7);
+            v2 += v7 + m[s[12]];
+            v13 = Integer.rotateRight(v13 ^ v2, 16);
+            v8 += v13;
+            v7 = Integer.rotateRight(v7 ^ v8, 12);
+            v2 += v7 + m[s[13]];
+            v13 = Integer.rotateRight(v13 ^ v2, 8);
+            v8 += v13;
+            v7 = Integer.rotateRight(v7 ^ v8, 7);
+            v3 += v4 + m[s[14]];
+            v14 = Integer.rotateRight(v14 ^ v3, 16);
+            v9 += v14;
+            v4 = Integer.rotateRight(v4 ^ v9, 12);
+            v3 += v4 + m[s[15]];
+            v14 = Integer.rotateRight(v14 ^ v3, 8);
+            v9 += v14;
+            v4 = Integer.rotateRight(v4 ^ v9, 7);
+        }
+
+        h[0] ^= v0 ^ v8;
+        h[1] ^= v1 ^ v9;
+        h[2] ^= v2 ^ v10;
+        h[3] ^= v3 ^ v11;
+        h[4] ^= v4 ^ v12;
+        h[5] ^= v5 ^ v13;
+        h[6] ^= v6 ^ v14;
+        h[7] ^= v7 ^ v15;
+    }
+
+    @Override
+    public int blockSize() {
+        return BLOCK_SZ;
+    }
+
+    @Override
+    public int digestSize() {
+        return digestLength;
+    }
+
+    /**
+     * Incremental BLAKE2s. Unlike the Merkle–Damgård hash functions, the final block is marked by a flag rather than
+     * padding, so the last block of input is kept in the buffer until more input arrives.
+     */
+    private static class BLAKE2sHasher implements Hasher {
+
+        private final BLAKE2s params;
+        private final int[] h = new int[8];
+        private final int[] m = new int[16];
+
+        /** Input that has not yet been processed, which may be a full block */
+        private final byte[] buffer = new byte[BLOCK_SZ];
+        private int buffered;
+
+        /** The number of bytes compressed so far, including the key block */
+        private long counter;
+
+        /** The length of the current message, excluding the key, and its flight recorder event if enabled */
+        private long length;
+        private HashOperationEvent event;
+        private boolean recordEvents = true;
+
+        private BLAKE2sHasher(BLAKE2s params) {
+            this.params = params;
+            reset();
+        }
+
+        /** Set up the chaining value from the parameter block, and buffer the padded key as the first block */
+        private void reset() {
+            System.arraycopy(IV, 0, h, 0, IV.length);
+            h[0] ^= 0x01010000 ^ (params.key.length << 8) ^ params.digestLength;
+            Arrays.fill(buffer, (byte) 0);
+            System.arraycopy(params.key, 0, buffer, 0, params.key.length);
+            buffered = params.key.length > 0 ? BLOCK_SZ : 0;
+            counter = 0;
+            length = 0;
+        }
+
+        @Override
+        public Hasher update(byte[] input, int off, int len) {
+            Objects.checkFromIndexSize(off, len, input.length);
+            if (len == 0)
+                return this;
+            beginEvent();
+            length += len;
+
+            if (buffered > 0) {
+                int n = Math.min(len, BLOCK_SZ - buffered);
+                System.arraycopy(input, off, buffer, buffered, n);
+                buffered += n;
+                off += n;
+                len -= n;
+                if (len == 0)
+                    return this;
+                // The buffer is full, and more input follows, so it is not the last block
+                counter += BLOCK_SZ;
+                compress(h, m, buffer, 0, counter, false);
+                buffered = 0;
+            }
+            // Whole blocks are compressed directly from the input, except for the last one
+            for (; len > BLOCK_SZ; off += BLOCK_SZ, len -= BLOCK_SZ) {
+                counter += BLOCK_SZ;
+                compress(h, m, input, off, counter, false);
+            }
+            System.arraycopy(input, off, buffer, 0, len);
+            buffered = len;
+            return this;
+        }
+
+        @Override
+        public Hasher update(ByteBuffer input) {
+            if (input.hasArray()) {
+                update(input.array(), input.arrayOffset() + input.position(), input.remaining());
+                input.position(input.limit());
+                return this;
+            }
+            while (input.hasRemaining()) {
+                // Only compress the buffered block when it is known not to be the last one
+                if (buffered == BLOCK_SZ) {
+                    counter += BLOCK_SZ;
+                    compress(h, m, buffer, 0, counter, false);
+                    buffered = 0;
+                }
+                beginEvent();
+                int n = Math.min(input.remaining(), BLOCK_SZ - buffered);
+                input.get(buffer, buffered, n);
+                buffered += n;
+                length += n;
+            }
+            return this;
+        }
+
+        @Override
+        public Digest finish() {
+            byte[] digest = new byte[params.digestLength];
+            finish(digest, 0);
+            return new Digest(digest);
+        }
+
+        @Override
+        public int finish(byte[] output, int off) {
+            Objects.checkFromIndexSize(off, params.digestLength, output.length);
+            counter += buffered;
+            Arrays.fill(buffer, buffered, BLOCK_SZ, (byte) 0);
+            compress(h, m, buffer, 0, counter, true);
+            // The digest is the little endian encoding of the chaining value, truncated to the digest length
+            for (int i = 0; i < params.digestLength; i++)
+                output[off + i] = (byte) (h[i / 4] >>> (i % 4 * Byte.SIZE));
+            if (event != null) {
+                event.complete(algorithmName(), length);
+                event = null;
+            }
+            reset();
+            return params.digestLength;
+        }
+
+        /** Start a flight recorder event if this is the start of a message, and the event is enabled */
+        private void beginEvent() {
+            if (recordEvents && length == 0 && event == null && HashOperationEvent.shouldBegin()) {
+                event = new HashOperationEvent();
+                event.begin();
+            }
+        }
+
+        @Override
+        public Hasher copy() {
+            return new BLAKE2sHasher(params).restore(this);
+        }
+
+        @Override
+        public Hasher restore(Hasher state) {
+            if (!(state instanceof BLAKE2sHasher other) || other.params.digestLength != params.digestLength ||
+                    !MessageDigest.isEqual(other.params.key, params.key))
+                throw new IllegalArgumentException("Can only restore a BLAKE2s hasher from a hasher with the same " +
+                                                   "digest length and key");
+            System.arraycopy(other.h, 0, h, 0, h.length);
+            System.arraycopy(other.buffer, 0, buffer, 0, BLOCK_SZ);
+            buffered = other.buffered;
+            counter = other.counter;
+            length = other.length;
+            recordEvents = other.recordEvents;
+            return this;
+        }
+
+        @Override
+        public Hasher withoutEvents() {
+            recordEvents = false;
+            return this;
+        }
+
+        /**
+         * The state is the message length, the chaining value and the buffered input. The last block is always kept
+         * in the buffer, so the number of buffered bytes follows from the message length. Keyed hashers do not
+         * support exporting their state.
+         */
+        @Override
+        public byte[] exportState() {
+            checkUnkeyed();
+            ByteBuffer state = Util.newState(algorithmName(), Long.BYTES + h.length * Integer.BYTES + buffered);
+            state.putLong(length);
+            for (int word : h)
+                state.putInt(word);
+            state.put(buffer, 0, buffered);
+            return state.array();
+        }
+
+        @Override
+        public Hasher importState(byte[] state) {
+            checkUnkeyed();
+            ByteBuffer input = Util.openState(algorithmName(), state);
+            if (input.remaining() < Long.BYTES + h.length * Integer.BYTES)
+                throw new IllegalArgumentException("Malformed " + algorithmName() + " hasher state");
+            long stateLength = input.getLong();
+            int stateBuffered = stateLength == 0 ? 0 : (int) ((stateLength - 1) % BLOCK_SZ) + 1;
+            if (stateLength < 0 || input.remaining() != h.length * Integer.BYTES + stateBuffered)
+                throw new IllegalArgumentException("Malformed " + algorithmName() + " hasher state");
+            for (int i = 0; i < h.length; i++)
+                h[i] = input.getInt();
+            Arrays.fill(buffer, (byte) 0);
+            input.get(buffer, 0, stateBuffered);
+            buffered = stateBuffered;
+            counter = stateLength - stateBuffered;
+            length = stateLength;
+            return this;
+        }
+
+        private void checkUnkeyed() {
+            if (params.key.length > 0)
+                throw new UnsupportedOperationException("Cannot export or import the state of a keyed BLAKE2s hasher");
+        }
+
+        /** @return the name of the hash function, e.g. "BLAKE2s-256". */
+        private String algorithmName() {
+            return "BLAKE2s-" + params.digestLength * Byte.SIZE;
+        }
+    }
+}
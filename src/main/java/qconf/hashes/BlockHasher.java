@@ -0,0 +1,209 @@
+package qconf.hashes;
+
+import qconf.jfr.HashOperationEvent;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Base class for hashers of Merkle–Damgård hash functions, such as SHA-1 and SHA-256 with 64-byte blocks and a 64-bit
+ * message length, or SHA-512 with 128-byte blocks and a 128-bit message length. The trailing partial block of the
+ * message is kept in a buffer, and the padding is only applied to the final block.
+ *
+ * @author Gabriel Skoglund
+ */
+abstract class BlockHasher implements Hasher {
+
+    /** Block size in bytes */
+    private final int blockSize;
+
+    /** Number of bytes at the end of the final block holding the message length in bits */
+    private final int lengthSize;
+
+    /** Input that does not yet make up a full block */
+    private final byte[] buffer;
+    private int buffered;
+
+    /** The total number of bytes of the current message */
+    private long length;
+
+    /** Flight recorder event for the current message, if enabled when the message was started */
+    private HashOperationEvent event;
+    private boolean recordEvents = true;
+
+    /** Create a hasher for a hash function with 64-byte blocks and a 64-bit message length */
+    BlockHasher() {
+        this(64, 8);
+    }
+
+    /**
+     * @param blockSize the block size in bytes.
+     * @param lengthSize the number of bytes holding the message length in bits, at the end of the final block.
+     */
+    BlockHasher(int blockSize, int lengthSize) {
+        this.blockSize = blockSize;
+        this.lengthSize = lengthSize;
+        this.buffer = new byte[blockSize];
+    }
+
+    /** Process one block of the message, updating the chaining state */
+    abstract void compress(byte[] block, int off);
+
+    /** Write the digest of the chaining state to the output */
+    abstract void writeDigest(byte[] output, int off);
+
+    /** Restore the chaining state to the initial hash value */
+    abstract void resetState();
+
+    /** @return the digest size in bytes. */
+    abstract int digestSize();
+
+    /** @return the name of the hash function, e.g. "SHA-256". */
+    abstract String algorithmName();
+
+    /** @return the size in bytes of the chaining state. */
+    abstract int hashStateSize();
+
+    /** Write the chaining state to the buffer */
+    abstract void exportHashState(ByteBuffer output);
+
+    /** Read the chaining state from the buffer */
+    abstract void importHashState(ByteBuffer input);
+
+    /** Start a flight recorder event if this is the start of a message, and the event is enabled */
+    private void beginEvent() {
+        if (recordEvents && length == 0 && event == null && HashOperationEvent.shouldBegin()) {
+            event = new HashOperationEvent();
+            event.begin();
+        }
+    }
+
+    /** Copy the buffered input, message length and event setting of this hasher to another hasher */
+    void copyTo(BlockHasher other) {
+        System.arraycopy(buffer, 0, other.buffer, 0, blockSize);
+        other.buffered = buffered;
+        other.length = length;
+        other.recordEvents = recordEvents;
+    }
+
+    @Override
+    public Hasher withoutEvents() {
+        recordEvents = false;
+        return this;
+    }
+
+    /**
+     * The state is the message length, the chaining state and the buffered input, where the number of buffered bytes
+     * follows from the message length.
+     */
+    @Override
+    public byte[] exportState() {
+        ByteBuffer state = Util.newState(algorithmName(), Long.BYTES + hashStateSize() + buffered);
+        state.putLong(length);
+        exportHashState(state);
+        state.put(buffer, 0, buffered);
+        return state.array();
+    }
+
+    @Override
+    public Hasher importState(byte[] state) {
+        ByteBuffer input = Util.openState(algorithmName(), state);
+        if (input.remaining() < Long.BYTES + hashStateSize())
+            throw new IllegalArgumentException("Malformed " + algorithmName() + " hasher state");
+        long stateLength = input.getLong();
+        if (stateLength < 0 || input.remaining() != hashStateSize() + stateLength % blockSize)
+            throw new IllegalArgumentException("Malformed " + algorithmName() + " hasher state");
+        importHashState(input);
+        length = stateLength;
+        buffered = (int) (stateLength % blockSize);
+        input.get(buffer, 0, buffered);
+        return this;
+    }
+
+    @Override
+    public Hasher update(byte[] input, int off, int len) {
+        Objects.checkFromIndexSize(off, len, input.length);
+        beginEvent();
+        length += len;
+
+        if (buffered > 0) {
+            int n = Math.min(len, blockSize - buffered);
+            System.arraycopy(input, off, buffer, buffered, n);
+            buffered += n;
+            off += n;
+            len -= n;
+            if (buffered < blockSize)
+                return this;
+            compress(buffer, 0);
+            buffered = 0;
+        }
+        // Whole blocks are compressed directly from the input
+        for (; len >= blockSize; off += blockSize, len -= blockSize)
+            compress(input, off);
+        System.arraycopy(input, off, buffer, 0, len);
+        buffered = len;
+        return this;
+    }
+
+    @Override
+    public Hasher update(ByteBuffer input) {
+        if (input.hasArray()) {
+            update(input.array(), input.arrayOffset() + input.position(), input.remaining());
+            input.position(input.limit());
+            return this;
+        }
+        beginEvent();
+        while (input.hasRemaining()) {
+            int n = Math.min(input.remaining(), blockSize - buffered);
+            input.get(buffer, buffered, n);
+            buffered += n;
+            length += n;
+            if (buffered == blockSize) {
+                compress(buffer, 0);
+                buffered = 0;
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public Digest finish() {
+        byte[] digest = new byte[digestSize()];
+        finish(digest, 0);
+        return new Digest(digest);
+    }
+
+    @Override
+    public int finish(byte[] output, int off) {
+        Objects.checkFromIndexSize(off, digestSize(), output.length);
+
+        // Append a single 1 bit, then zeroes up to the length field, using an extra block if there is no room for it
+        buffer[buffered++] = (byte) 0x80;
+        if (buffered > blockSize - lengthSize) {
+            Arrays.fill(buffer, buffered, blockSize, (byte) 0);
+            compress(buffer, 0);
+            buffered = 0;
+        }
+        Arrays.fill(buffer, buffered, blockSize - lengthSize, (byte) 0);
+        // The length in bits may need more than 64 bits, in which case the bits shifted out go into the next word
+        long bitLength = length * Byte.SIZE;
+        long bitLengthHigh = length >>> (Long.SIZE - 3);
+        for (int i = 0; i < lengthSize; i++) {
+            long word = i < Long.BYTES ? bitLength : bitLengthHigh;
+            buffer[blockSize - 1 - i] = (byte) (word >>> (i % Long.BYTES * Byte.SIZE));
+        }
+        compress(buffer, 0);
+        writeDigest(output, off);
+        if (event != null) {
+            event.complete(algorithmName(), length);
+            event = null;
+        }
+
+        Arrays.fill(buffer, (byte) 0);
+        buffered = 0;
+        length = 0;
+        resetState();
+        return digestSize();
+    }
+}
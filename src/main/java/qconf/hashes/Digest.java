@@ -11,7 +11,12 @@ public class Digest {
 
     private final byte[] digest;
 
-    Digest(byte[] digest) {
+    /**
+     * Wrap the output of a hash function or MAC as a digest. The array is not copied.
+     *
+     * @param digest the bytes of the digest.
+     */
+    public Digest(byte[] digest) {
         this.digest = digest;
     }
 
@@ -16,6 +16,11 @@ public interface HashFunction {
      */
     Digest digest(byte[] input);
 
+    /**
+     * @return a new {@link Hasher}, for hashing input that is provided in several parts.
+     */
+    Hasher newHasher();
+
     /**
      * @return the block size of this hash function in bytes.
      */
@@ -0,0 +1,116 @@
+package qconf.hashes;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Incremental computation of a message digest, for messages that are provided in several parts. Only the trailing
+ * partial block of the message is buffered, so messages of any length can be hashed in constant memory.
+ * After {@link #finish}, the hasher is reset and may be used for a new message.
+ * <p>
+ * Hashers are created using {@link HashFunction#newHasher()}, and are not thread-safe.
+ *
+ * @author Gabriel Skoglund
+ */
+public interface Hasher {
+
+    /**
+     * Add part of the message.
+     *
+     * @param input the array holding the input.
+     * @param off the offset of the input in {@code input}.
+     * @param len the length of the input.
+     * @return this hasher.
+     * @throws IndexOutOfBoundsException if the input is out of bounds of the array.
+     */
+    Hasher update(byte[] input, int off, int len);
+
+    /**
+     * Add part of the message.
+     *
+     * @param input the input bytes.
+     * @return this hasher.
+     */
+    default Hasher update(byte[] input) {
+        return update(input, 0, input.length);
+    }
+
+    /**
+     * Add the remaining bytes of the buffer to the message. Both heap and direct buffers are supported.
+     *
+     * @param input the input bytes. Its position will be advanced to its limit.
+     * @return this hasher.
+     */
+    Hasher update(ByteBuffer input);
+
+    /**
+     * Complete the message and reset the hasher.
+     *
+     * @return the {@link Digest} of the message.
+     */
+    Digest finish();
+
+    /**
+     * Complete the message and reset the hasher, writing the digest to the given array.
+     *
+     * @param output the array to write the digest to.
+     * @param off the offset at which to write the digest.
+     * @return the number of bytes written, which is the digest size of the hash function.
+     * @throws IndexOutOfBoundsException if there is not enough space for the digest in the array.
+     */
+    int finish(byte[] output, int off);
+
+    /**
+     * Create an independent copy of this hasher, including the input added so far. This allows a common prefix of
+     * several messages to be hashed only once.
+     *
+     * @return a new hasher in the same state as this one.
+     */
+    Hasher copy();
+
+    /**
+     * Restore this hasher to the state of another hasher of the same hash function, as if all input added to the
+     * other hasher had been added to this one instead. Unlike {@link #copy()}, this does not allocate any memory.
+     *
+     * @param state the hasher whose state to copy. It is not modified.
+     * @return this hasher.
+     * @throws IllegalArgumentException if the other hasher is of a different hash function.
+     */
+    Hasher restore(Hasher state);
+
+    /**
+     * Stop recording flight recorder events for the messages of this hasher. This is meant for hashers used
+     * internally by an operation that records its own event, such as HMAC or PBKDF2, so that the internal hashes are
+     * neither recorded nor counted in the throughput. The setting is part of the state copied by {@link #copy()} and
+     * {@link #restore(Hasher)}.
+     *
+     * @return this hasher.
+     */
+    Hasher withoutEvents();
+
+    /**
+     * Export the state of this hasher, including the input added so far, as bytes. The state can be imported into a
+     * new hasher of the same hash function using {@link #importState(byte[])}, also in another process, to continue
+     * hashing the message from where it was left, e.g. to resume an interrupted upload without hashing it again.
+     * <p>
+     * Keyed hashers do not support exporting their state, since the state would allow computing the digest of any
+     * message with the same prefix without knowing the key.
+     *
+     * @return the serialized state, which is not modified by later input to this hasher.
+     * @throws UnsupportedOperationException if the hasher does not support exporting its state.
+     */
+    default byte[] exportState() {
+        throw new UnsupportedOperationException("Cannot export the state of " + getClass().getName());
+    }
+
+    /**
+     * Restore this hasher to a state exported by {@link #exportState()} from a hasher of the same hash function.
+     *
+     * @param state the serialized state.
+     * @return this hasher.
+     * @throws IllegalArgumentException if the state was exported from a different hash function, or is malformed.
+     * @throws UnsupportedOperationException if the hasher does not support importing a state.
+     */
+    default Hasher importState(byte[] state) {
+        throw new UnsupportedOperationException("Cannot import the state of " + getClass().getName());
+    }
+}
@@ -0,0 +1,40 @@
+package qconf.hashes;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Base class for hashers of Merkle–Damgård hash functions with a chaining state of 32-bit words, such as SHA-1 and
+ * SHA-256, with 64-byte blocks and a 64-bit message length.
+ *
+ * @author Gabriel Skoglund
+ */
+abstract class IntBlockHasher extends BlockHasher {
+
+    /** The intermediate hash value */
+    final int[] hash;
+
+    /**
+     * @param initialHash the initial hash value, which is copied.
+     */
+    IntBlockHasher(int[] initialHash) {
+        this.hash = Arrays.copyOf(initialHash, initialHash.length);
+    }
+
+    @Override
+    int hashStateSize() {
+        return hash.length * Integer.BYTES;
+    }
+
+    @Override
+    void exportHashState(ByteBuffer output) {
+        for (int word : hash)
+            output.putInt(word);
+    }
+
+    @Override
+    void importHashState(ByteBuffer input) {
+        for (int i = 0; i < hash.length; i++)
+            hash[i] = input.getInt();
+    }
+}
@@ -0,0 +1,400 @@
+package qconf.hashes;
+
+import qconf.jfr.HashOperationEvent;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A Merkle tree hash over SHA-256, as defined in RFC 9162 (Certificate Transparency). The input is split into leaves
+ * of a fixed size, which are hashed independently in parallel, and the leaf hashes are combined pairwise into a
+ * single root hash. Leaves and inner nodes are hashed with different prefixes (0x00 and 0x01), so that a leaf can
+ * never be mistaken for an inner node.
+ * <p>
+ * The tree keeps the hashes of all leaves and complete subtrees, so that an {@link InclusionProof} can be created
+ * for any leaf. The proof allows a single chunk of the input to be verified against the root hash without access
+ * to the rest of the input.
+ * <p>
+ * Note that the root hash depends on the leaf size, and is not the same as the SHA-256 digest of the input.
+ *
+ * @author Gabriel Skoglund
+ */
+public class MerkleTree {
+
+    /** Prefix of the input to the hash function for leaves */
+    private static final byte[] LEAF_PREFIX = {0x00};
+
+    /** Prefix of the input to the hash function for inner nodes */
+    private static final byte[] NODE_PREFIX = {0x01};
+
+    /** Length of SHA-256 digests in bytes */
+    private static final int HASH_LEN = 32;
+
+    /** Size of the buffer used when reading leaves from a file */
+    private static final int READ_BUFFER_SZ = 64 * 1024;
+
+    /** Leaves are hashed in tasks covering at least this many bytes of input */
+    private static final int MIN_TASK_SZ = 64 * 1024;
+
+    private static final String ALGORITHM = "Merkle-SHA-256";
+
+    private final int leafSize;
+    private final int leafCount;
+
+    /**
+     * The hashes of all complete subtrees, i.e. subtrees covering 2^level leaves starting at a multiple of 2^level.
+     * levels[level] holds the subtree hashes of that level, each {@value #HASH_LEN} bytes. Level 0 holds the leaves.
+     */
+    private final byte[][] levels;
+
+    private final byte[] root;
+
+    private MerkleTree(int leafSize, long length, LeafSource source, ForkJoinPool pool) throws IOException {
+        // Building the tree is recorded as a single operation, rather than one for each leaf and inner node
+        HashOperationEvent event = new HashOperationEvent();
+        event.begin();
+        int leafCount = leafCount(length, leafSize);
+        this.leafSize = leafSize;
+        this.leafCount = leafCount;
+
+        int numLevels = 1;
+        while ((1L << (numLevels - 1)) < leafCount)
+            numLevels++;
+        levels = new byte[numLevels][];
+        levels[0] = new byte[leafCount * HASH_LEN];
+
+        LeafTask task = new LeafTask(source, 0, leafCount);
+        pool.invoke(task);
+        if (task.failure != null)
+            throw task.failure;
+
+        // The inner nodes are few compared to the leaves, so they are hashed on the calling thread
+        Hasher hasher = new SHA256().newHasher().withoutEvents();
+        for (int level = 1; level < numLevels; level++) {
+            byte[] below = levels[level - 1];
+            levels[level] = new byte[below.length / (2 * HASH_LEN) * HASH_LEN];
+            for (int i = 0; i < levels[level].length; i += HASH_LEN)
+                hashNode(hasher, below, 2 * i, below, 2 * i + HASH_LEN, levels[level], i);
+        }
+        root = new byte[HASH_LEN];
+        if (leafCount == 0)
+            hasher.finish(root, 0);
+        else
+            subtreeHash(hasher, 0, leafCount, root, 0);
+        event.complete(ALGORITHM, length);
+    }
+
+    /**
+     * Create the Merkle tree of an array of bytes, hashing the leaves in parallel on the common
+     * {@link ForkJoinPool}.
+     *
+     * @param data the input.
+     * @param leafSize the number of bytes in each leaf. The last leaf may be shorter.
+     * @return the Merkle tree of the input.
+     * @throws IllegalArgumentException if the leaf size is not positive.
+     */
+    public static MerkleTree of(byte[] data, int leafSize) {
+        return of(data, leafSize, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Create the Merkle tree of an array of bytes, hashing the leaves in parallel on the given pool.
+     *
+     * @param data the input.
+     * @param leafSize the number of bytes in each leaf. The last leaf may be shorter.
+     * @param pool the pool to hash the leaves on.
+     * @return the Merkle tree of the input.
+     * @throws IllegalArgumentException if the leaf size is not positive.
+     */
+    public static MerkleTree of(byte[] data, int leafSize, ForkJoinPool pool) {
+        try {
+            return new MerkleTree(leafSize, data.length, (hasher, leaf, buffer) -> {
+                int start = leaf * leafSize;
+                hasher.update(data, start, Math.min(leafSize, data.length - start));
+            }, pool);
+        } catch (IOException e) {
+            throw new AssertionError("Unexpected I/O exception for array input", e);
+        }
+    }
+
+    /**
+     * Create the Merkle tree of a file, reading and hashing the leaves in parallel on the common
+     * {@link ForkJoinPool}. Each leaf is read independently, so the whole file is never held in memory.
+     *
+     * @param file the input file.
+     * @param leafSize the number of bytes in each leaf. The last leaf may be shorter.
+     * @return the Merkle tree of the file.
+     * @throws IOException if the file could not be read.
+     * @throws IllegalArgumentException if the leaf size is not positive, or the file has too many leaves.
+     */
+    public static MerkleTree of(Path file, int leafSize) throws IOException {
+        return of(file, leafSize, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Create the Merkle tree of a file, reading and hashing the leaves in parallel on the given pool.
+     * See {@link #of(Path, int)}.
+     *
+     * @param file the input file.
+     * @param leafSize the number of bytes in each leaf. The last leaf may be shorter.
+     * @param pool the pool to hash the leaves on.
+     * @return the Merkle tree of the file.
+     * @throws IOException if the file could not be read.
+     * @throws IllegalArgumentException if the leaf size is not positive, or the file has too many leaves.
+     */
+    public static MerkleTree of(Path file, int leafSize, ForkJoinPool pool) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            return new MerkleTree(leafSize, size, new LeafSource() {
+                @Override
+                public ByteBuffer newBuffer() {
+                    return ByteBuffer.allocate(Math.min(leafSize, READ_BUFFER_SZ));
+                }
+
+                @Override
+                public void hashLeaf(Hasher hasher, int leaf, ByteBuffer buffer) throws IOException {
+                    long position = (long) leaf * leafSize;
+                    long end = Math.min(position + leafSize, size);
+                    while (position < end) {
+                        buffer.clear().limit((int) Math.min(buffer.capacity(), end - position));
+                        int n = channel.read(buffer, position);
+                        if (n < 0)
+                            throw new IOException("Unexpected end of file at offset " + position);
+                        position += n;
+                        hasher.update(buffer.flip());
+                    }
+                }
+            }, pool);
+        }
+    }
+
+    /**
+     * @return the root hash of the tree.
+     */
+    public Digest root() {
+        return new Digest(root.clone());
+    }
+
+    /**
+     * @return the number of bytes in each leaf.
+     */
+    public int leafSize() {
+        return leafSize;
+    }
+
+    /**
+     * @return the number of leaves of the tree.
+     */
+    public int leafCount() {
+        return leafCount;
+    }
+
+    /**
+     * Create a proof that a leaf is included in the tree. The proof consists of the hashes of the sibling subtrees
+     * on the path from the leaf to the root, so its size is logarithmic in the number of leaves.
+     *
+     * @param leafIndex the index of the leaf, i.e. the offset of the chunk in the input divided by the leaf size.
+     * @return an {@link InclusionProof} for the leaf.
+     * @throws IndexOutOfBoundsException if there is no leaf with the given index.
+     */
+    public InclusionProof proof(int leafIndex) {
+        Objects.checkIndex(leafIndex, leafCount);
+        Hasher hasher = new SHA256().newHasher().withoutEvents();
+        List<byte[]> path = new ArrayList<>();
+        addPath(hasher, leafIndex, 0, leafCount, path);
+        return new InclusionProof(leafIndex, leafCount, path.toArray(new byte[0][]));
+    }
+
+    /** Add the sibling hashes on the path from leaf m to the root of the subtree of leaves [start, end) */
+    private void addPath(Hasher hasher, int m, int start, int end, List<byte[]> path) {
+        if (end - start == 1)
+            return;
+        int split = start + largestPowerOfTwoBelow(end - start);
+        byte[] sibling = new byte[HASH_LEN];
+        if (m < split) {
+            addPath(hasher, m, start, split, path);
+            subtreeHash(hasher, split, end, sibling, 0);
+        } else {
+            addPath(hasher, m, split, end, path);
+            subtreeHash(hasher, start, split, sibling, 0);
+        }
+        path.add(sibling);
+    }
+
+    /**
+     * Write the hash of the subtree of leaves [start, end) to the output. The left part of every split is a complete
+     * subtree, whose hash has already been computed, so only O(log n) nodes need to be hashed.
+     */
+    private void subtreeHash(Hasher hasher, int start, int end, byte[] output, int outOff) {
+        int n = end - start;
+        if (Integer.bitCount(n) == 1) {
+            int level = Integer.numberOfTrailingZeros(n);
+            System.arraycopy(levels[level], (start >> level) * HASH_LEN, output, outOff, HASH_LEN);
+            return;
+        }
+        int split = start + largestPowerOfTwoBelow(n);
+        byte[] children = new byte[2 * HASH_LEN];
+        subtreeHash(hasher, start, split, children, 0);
+        subtreeHash(hasher, split, end, children, HASH_LEN);
+        hashNode(hasher, children, 0, children, HASH_LEN, output, outOff);
+    }
+
+    /** Hash an inner node with the given children */
+    private static void hashNode(Hasher hasher, byte[] left, int leftOff, byte[] right, int rightOff,
+                                 byte[] output, int outOff) {
+        hasher.update(NODE_PREFIX);
+        hasher.update(left, leftOff, HASH_LEN);
+        hasher.update(right, rightOff, HASH_LEN);
+        hasher.finish(output, outOff);
+    }
+
+    /** The largest power of two strictly smaller than n, for n > 1 */
+    private static int largestPowerOfTwoBelow(int n) {
+        return Integer.highestOneBit(n - 1);
+    }
+
+    private static int leafCount(long length, int leafSize) {
+        if (leafSize <= 0)
+            throw new IllegalArgumentException("The leaf size must be positive, but was " + leafSize);
+        long leafCount = (length + leafSize - 1) / leafSize;
+        if (leafCount > Integer.MAX_VALUE / HASH_LEN)
+            throw new IllegalArgumentException("The input has too many leaves (" + leafCount + "), please use a " +
+                                               "larger leaf size");
+        return (int) leafCount;
+    }
+
+    /** Provides the data of a leaf to a hasher */
+    private interface LeafSource {
+
+        /** @return a buffer for reading leaves, which is reused for all leaves of a task, or null if none is needed. */
+        default ByteBuffer newBuffer() {
+            return null;
+        }
+
+        void hashLeaf(Hasher hasher, int leaf, ByteBuffer buffer) throws IOException;
+    }
+
+    /** Hashes the leaves [start, end) into levels[0], splitting the range into parallel tasks */
+    private class LeafTask extends RecursiveAction {
+
+        private final LeafSource source;
+        private final int start, end;
+        private IOException failure;
+
+        LeafTask(LeafSource source, int start, int end) {
+            this.source = source;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if ((long) (end - start) * leafSize > MIN_TASK_SZ && end - start > 1) {
+                int mid = (start + end) >>> 1;
+                LeafTask left = new LeafTask(source, start, mid);
+                LeafTask right = new LeafTask(source, mid, end);
+                invokeAll(left, right);
+                failure = left.failure != null ? left.failure : right.failure;
+                return;
+            }
+            Hasher hasher = new SHA256().newHasher().withoutEvents();
+            ByteBuffer buffer = source.newBuffer();
+            try {
+                for (int leaf = start; leaf < end; leaf++) {
+                    hasher.update(LEAF_PREFIX);
+                    source.hashLeaf(hasher, leaf, buffer);
+                    hasher.finish(levels[0], leaf * HASH_LEN);
+                }
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+    }
+
+    /**
+     * A proof that a chunk of the input is included in a Merkle tree with a given root hash, consisting of the
+     * hashes of the sibling subtrees on the path from the leaf to the root.
+     */
+    public static class InclusionProof {
+
+        private final int leafIndex;
+        private final int leafCount;
+        private final byte[][] path;
+
+        /**
+         * @param leafIndex the index of the leaf that the proof is for.
+         * @param leafCount the number of leaves of the tree.
+         * @param path the sibling hashes, starting from the leaf.
+         */
+        public InclusionProof(int leafIndex, int leafCount, byte[][] path) {
+            this.leafIndex = leafIndex;
+            this.leafCount = leafCount;
+            this.path = path;
+        }
+
+        /**
+         * @return the index of the leaf that the proof is for.
+         */
+        public int leafIndex() {
+            return leafIndex;
+        }
+
+        /**
+         * @return the number of leaves of the tree.
+         */
+        public int leafCount() {
+            return leafCount;
+        }
+
+        /**
+         * @return the sibling hashes on the path from the leaf to the root.
+         */
+        public byte[][] path() {
+            return path;
+        }
+
+        /**
+         * Verify that the given chunk is the leaf of a tree with the given root hash, using the algorithm of
+         * RFC 9162, section 2.1.3.2.
+         *
+         * @param root the root hash of the tree.
+         * @param chunk the data of the leaf.
+         * @return true if the chunk is included in the tree at the index of this proof.
+         */
+        public boolean verify(Digest root, byte[] chunk) {
+            if (leafIndex < 0 || leafIndex >= leafCount)
+                return false;
+            Hasher hasher = new SHA256().newHasher().withoutEvents();
+            byte[] hash = new byte[HASH_LEN];
+            hasher.update(LEAF_PREFIX).update(chunk).finish(hash, 0);
+
+            long fn = leafIndex;
+            long sn = leafCount - 1;
+            for (byte[] sibling : path) {
+                if (sn == 0 || sibling.length != HASH_LEN)
+                    return false;
+                if ((fn & 1) == 1 || fn == sn) {
+                    hashNode(hasher, sibling, 0, hash, 0, hash, 0);
+                    while ((fn & 1) == 0 && fn != 0) {
+                        fn >>= 1;
+                        sn >>= 1;
+                    }
+                } else {
+                    hashNode(hasher, hash, 0, sibling, 0, hash, 0);
+                }
+                fn >>= 1;
+                sn >>= 1;
+            }
+            return sn == 0 && MessageDigest.isEqual(hash, root.asBytes());
+        }
+    }
+}
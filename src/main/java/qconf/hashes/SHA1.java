@@ -1,13 +1,11 @@
 package qconf.hashes;
 
-import java.util.Arrays;
-
 /**
  * The SHA-1 hash function as defined in NIST FIPS 180-4.
  * The function turns byte input of any length into message digests of 160-bits.
  * By specification, SHA-1 can take input of any length less than 2^64 bits
- * (2^61 bytes). However, the maximum input size of this implementation is
- * bounded by the maximum size of arrays in java (2^31 - 1 elements).
+ * (2^61 bytes). Inputs that do not fit in a single array can be hashed
+ * incrementally using {@link #newHasher()}.
  * <p>
  * Please note that SHA-1 is no longer considered to be a secure hash function,
  * and either SHA-2 or SHA-3 should be used for sensitive applications.
@@ -38,47 +36,58 @@ public class SHA1 implements HashFunction {
      */
     @Override
     public Digest digest(byte[] input) {
-        input = Util.pad(input);
-        int[] hash = Arrays.copyOf(H_0, H_0.length);
-
-        for (int block = 0; block < input.length; block += BLOCK_SZ) {
-            // Initialize the message schedule W_t
-            int[] w = new int[NUM_ROUNDS];
-            for (int t = 0; t < 16; t++)
-                w[t] = Util.bytesToInt(input[block + WORD_LEN * t], input[block + WORD_LEN * t + 1],
-                                       input[block + WORD_LEN * t + 2], input[block + WORD_LEN * t + 3]);
-            for (int t = 16; t < 80; t++)
-                w[t] = Integer.rotateLeft(w[t - 3] ^ w[t - 8] ^ w[t - 14] ^ w[t - 16], 1);
-
-            // Initialize working variables
-            int a = hash[0], b = hash[1], c = hash[2], d = hash[3], e = hash[4];
-
-            // Perform rounds
-            for (int t = 0; t < 80; t++) {
-                int tmp = Integer.rotateLeft(a, 5) + roundFunction(b, c, d, t) + e + roundConstant(t) + w[t];
-                e = d;
-                d = c;
-                c = Integer.rotateLeft(b, 30);
-                b = a;
-                a = tmp;
-            }
-
-            // Calculate intermediate hash values
-            hash[0] = a + hash[0];
-            hash[1] = b + hash[1];
-            hash[2] = c + hash[2];
-            hash[3] = d + hash[3];
-            hash[4] = e + hash[4];
+        return newHasher().update(input).finish();
+    }
+
+    /**
+     * @return a new {@link Hasher} producing {@value #DIGEST_LENGTH} byte digests.
+     */
+    @Override
+    public Hasher newHasher() {
+        return new SHA1Hasher();
+    }
+
+    /**
+     * Process a single message block, updating the intermediate hash value.
+     *
+     * @param hash the intermediate hash value.
+     * @param w an array of length {@value #NUM_ROUNDS} to hold the message schedule.
+     * @param block the array holding the message block.
+     * @param off the offset of the message block.
+     */
+    private static void compress(int[] hash, int[] w, byte[] block, int off) {
+        // Initialize the message schedule W_t
+        for (int t = 0; t < 16; t++)
+            w[t] = Util.bytesToInt(block[off + WORD_LEN * t], block[off + WORD_LEN * t + 1],
+                                   block[off + WORD_LEN * t + 2], block[off + WORD_LEN * t + 3]);
+        for (int t = 16; t < 80; t++)
+            w[t] = Integer.rotateLeft(w[t - 3] ^ w[t - 8] ^ w[t - 14] ^ w[t - 16], 1);
+
+        // Initialize working variables
+        int a = hash[0], b = hash[1], c = hash[2], d = hash[3], e = hash[4];
+
+        // Perform rounds
+        for (int t = 0; t < 80; t++) {
+            int tmp = Integer.rotateLeft(a, 5) + roundFunction(b, c, d, t) + e + roundConstant(t) + w[t];
+            e = d;
+            d = c;
+            c = Integer.rotateLeft(b, 30);
+            b = a;
+            a = tmp;
         }
 
-        // Turn hash words back into bytes
-        return Util.getDigest(hash, DIGEST_LENGTH, WORD_LEN);
+        // Calculate intermediate hash values
+        hash[0] = a + hash[0];
+        hash[1] = b + hash[1];
+        hash[2] = c + hash[2];
+        hash[3] = d + hash[3];
+        hash[4] = e + hash[4];
     }
 
     /**
      * Calculate the SHA-1 round function f_t
      */
-    private int roundFunction(int x, int y, int z, int t) {
+    private static int roundFunction(int x, int y, int z, int t) {
         if (t < 20)
             return (x & y) ^ (~x & z);
         else if (t < 40 || t >= 60)
@@ -90,7 +99,7 @@ public class SHA1 implements HashFunction {
     /**
      * Get the SHA-1 round constant K_t
      */
-    private int roundConstant(int t) {
+    private static int roundConstant(int t) {
         if (t < 20)
             return 0x5a827999;
         else if (t < 40)
@@ -110,4 +119,53 @@ public class SHA1 implements HashFunction {
     public int digestSize() {
         return DIGEST_LENGTH;
     }
+
+    /** Incremental SHA-1, keeping the intermediate hash value between blocks */
+    private static class SHA1Hasher extends IntBlockHasher {
+
+        private final int[] w = new int[NUM_ROUNDS];
+
+        private SHA1Hasher() {
+            super(H_0);
+        }
+
+        @Override
+        void compress(byte[] block, int off) {
+            SHA1.compress(hash, w, block, off);
+        }
+
+        @Override
+        void writeDigest(byte[] output, int off) {
+            Util.intsToBytes(hash, DIGEST_LENGTH, output, off);
+        }
+
+        @Override
+        void resetState() {
+            System.arraycopy(H_0, 0, hash, 0, H_0.length);
+        }
+
+        @Override
+        int digestSize() {
+            return DIGEST_LENGTH;
+        }
+
+        @Override
+        String algorithmName() {
+            return "SHA-1";
+        }
+
+        @Override
+        public Hasher copy() {
+            return new SHA1Hasher().restore(this);
+        }
+
+        @Override
+        public Hasher restore(Hasher state) {
+            if (!(state instanceof SHA1Hasher other))
+                throw new IllegalArgumentException("Cannot restore a SHA1 hasher from " + state.getClass().getName());
+            System.arraycopy(other.hash, 0, hash, 0, hash.length);
+            other.copyTo(this);
+            return this;
+        }
+    }
 }
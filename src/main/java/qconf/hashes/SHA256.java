@@ -1,13 +1,16 @@
 package qconf.hashes;
 
+import qconf.jfr.HashOperationEvent;
+
 import java.util.Arrays;
+import java.util.Objects;
 
 /**
  * The SHA-256 hash function as defined in NIST FIPS 180-4.
  * The function turns byte input of any length into message digests of 256-bits.
  * By specification, SHA-256 can take input of any length less than 2^64 bits
- * (2^61 bytes). However, the maximum input size of this implementation is
- * bounded by the maximum size of arrays in java (2^31 - 1 elements).
+ * (2^61 bytes). Inputs that do not fit in a single array can be hashed
+ * incrementally using {@link #newHasher()}.
  *
  * @author Gabriel Skoglund
  */
@@ -22,6 +25,9 @@ public class SHA256 implements HashFunction {
     /** Word length in bytes. */
     private static final int WORD_LEN = 4;
 
+    /** Number of messages processed at once by {@link #digestAll(byte[][])} */
+    private static final int LANES = 2;
+
     /** Number of rounds for each message block */
     public static final int NUM_ROUNDS = 64;
 
@@ -43,48 +49,264 @@ public class SHA256 implements HashFunction {
 
     @Override
     public Digest digest(byte[] input) {
-        input = Util.pad(input);
-        int[] hash = Arrays.copyOf(H_0, H_0.length);
-
-        for (int block = 0; block < input.length; block += BLOCK_SZ) {
-            // Prepare the message schedule W_t
-            int[] w = new int[NUM_ROUNDS];
-            for (int t = 0; t < 16; t++)
-                w[t] = Util.bytesToInt(input[block + t * WORD_LEN], input[block + t * WORD_LEN + 1],
-                                       input[block + t * WORD_LEN + 2], input[block + t * WORD_LEN + 3]);
-            for (int t = 16; t < NUM_ROUNDS; t++)
-                w[t] = smallSigmaOne(w[t - 2]) + w[t - 7] + smallSigmaZero(w[t - 15]) + w[t - 16];
-
-            // Set up working variables
-            int a = hash[0], b = hash[1], c = hash[2], d = hash[3], e = hash[4], f = hash[5], g = hash[6], h = hash[7];
-
-            // Perform rounds
-            for (int t = 0; t < NUM_ROUNDS; t++) {
-                int tOne = h + bigSigmaOne(e) + ch(e, f, g) + ROUND_CONSTANTS[t] + w[t];
-                int tTwo = bigSigmaZero(a) + maj(a, b, c);
-                h = g;
-                g = f;
-                f = e;
-                e = d + tOne;
-                d = c;
-                c = b;
-                b = a;
-                a = tOne + tTwo;
+        return newHasher().update(input).finish();
+    }
+
+    /**
+     * @return a new {@link Hasher} producing {@value #DIGEST_LENGTH} byte digests.
+     */
+    @Override
+    public Hasher newHasher() {
+        return new SHA256Hasher();
+    }
+
+    /**
+     * Process a single message block, updating the intermediate hash value.
+     *
+     * @param hash the intermediate hash value.
+     * @param w an array of length {@value #NUM_ROUNDS} to hold the message schedule.
+     * @param block the array holding the message block.
+     * @param off the offset of the message block.
+     */
+    private static void compress(int[] hash, int[] w, byte[] block, int off) {
+        // Prepare the message schedule W_t
+        for (int t = 0; t < 16; t++)
+            w[t] = Util.bytesToInt(block[off + t * WORD_LEN], block[off + t * WORD_LEN + 1],
+                                   block[off + t * WORD_LEN + 2], block[off + t * WORD_LEN + 3]);
+        for (int t = 16; t < NUM_ROUNDS; t++)
+            w[t] = smallSigmaOne(w[t - 2]) + w[t - 7] + smallSigmaZero(w[t - 15]) + w[t - 16];
+
+        // Set up working variables
+        int a = hash[0], b = hash[1], c = hash[2], d = hash[3], e = hash[4], f = hash[5], g = hash[6], h = hash[7];
+
+        // Perform rounds
+        for (int t = 0; t < NUM_ROUNDS; t++) {
+            int tOne = h + bigSigmaOne(e) + ch(e, f, g) + ROUND_CONSTANTS[t] + w[t];
+            int tTwo = bigSigmaZero(a) + maj(a, b, c);
+            h = g;
+            g = f;
+            f = e;
+            e = d + tOne;
+            d = c;
+            c = b;
+            b = a;
+            a = tOne + tTwo;
+        }
+
+        // Calculate immediate hash values
+        hash[0] += a;
+        hash[1] += b;
+        hash[2] += c;
+        hash[3] += d;
+        hash[4] += e;
+        hash[5] += f;
+        hash[6] += g;
+        hash[7] += h;
+    }
+
+    /**
+     * Digest many independent messages, such as short records or identifiers, in a single call. The messages are
+     * processed {@value #LANES} at a time in interleaved lanes, which avoids the per-message overhead of
+     * {@link #digest(byte[])} and lets the CPU work on several independent compression rounds at once.
+     *
+     * @param inputs the messages to be hashed.
+     * @return an array holding the {@value #DIGEST_LENGTH} byte digest of each message, in order.
+     */
+    public byte[] digestAll(byte[][] inputs) {
+        int[] offsets = new int[inputs.length];
+        int[] lengths = new int[inputs.length];
+        for (int i = 0; i < inputs.length; i++)
+            lengths[i] = inputs[i].length;
+        byte[] output = new byte[inputs.length * DIGEST_LENGTH];
+        digestAll(inputs, offsets, lengths, output, 0);
+        return output;
+    }
+
+    /**
+     * Digest many independent messages stored in a single array, writing the digests to a flat output array.
+     * See {@link #digestAll(byte[][])}.
+     *
+     * @param data the array holding the messages.
+     * @param offsets the offset of each message in {@code data}.
+     * @param lengths the length of each message.
+     * @param output the array to write the {@value #DIGEST_LENGTH} byte digest of each message to, in order.
+     * @param outOff the offset at which to write the first digest.
+     * @throws IllegalArgumentException if the number of offsets and lengths differ.
+     * @throws IndexOutOfBoundsException if a message is out of bounds of the data, or there is not enough space
+     *                                   for the digests in the output.
+     */
+    public void digestAll(byte[] data, int[] offsets, int[] lengths, byte[] output, int outOff) {
+        if (offsets.length != lengths.length)
+            throw new IllegalArgumentException("Got " + offsets.length + " offsets but " + lengths.length +
+                                               " lengths");
+        byte[][] arrays = new byte[offsets.length][];
+        Arrays.fill(arrays, data);
+        digestAll(arrays, offsets, lengths, output, outOff);
+    }
+
+    /** Digest message i, stored in arrays[i] at offsets[i], recording all messages as a single operation */
+    private void digestAll(byte[][] arrays, int[] offsets, int[] lengths, byte[] output, int outOff) {
+        int count = arrays.length;
+        long totalLength = 0;
+        for (int i = 0; i < count; i++) {
+            Objects.checkFromIndexSize(offsets[i], lengths[i], arrays[i].length);
+            totalLength += lengths[i];
+        }
+        Objects.checkFromIndexSize(outOff, count * DIGEST_LENGTH, output.length);
+
+        HashOperationEvent event = new HashOperationEvent();
+        event.begin();
+        // There is nothing to interleave with, so use a single lane
+        if (count < LANES) {
+            Hasher hasher = newHasher().withoutEvents();
+            for (int i = 0; i < count; i++)
+                hasher.update(arrays[i], offsets[i], lengths[i]).finish(output, outOff + i * DIGEST_LENGTH);
+        } else {
+            digestLanes(arrays, offsets, lengths, output, outOff);
+        }
+        event.complete("SHA-256", totalLength);
+    }
+
+    /** Digest message i, stored in arrays[i] at offsets[i], with lanes interleaved */
+    private void digestLanes(byte[][] arrays, int[] offsets, int[] lengths, byte[] output, int outOff) {
+        int count = arrays.length;
+
+        int[][] hash = new int[LANES][H_0.length];
+        int[][] w = new int[LANES][NUM_ROUNDS];
+
+        // The block that each lane processes next, and the message it belongs to (-1 if the lane is idle)
+        byte[][] blocks = new byte[LANES][];
+        int[] blockOffsets = new int[LANES];
+        int[] message = new int[LANES];
+        int[] block = new int[LANES];
+        int[] numBlocks = new int[LANES];
+        // The final (padded) blocks of each message are prepared in a separate buffer
+        byte[][] tails = new byte[LANES][2 * BLOCK_SZ];
+        byte[] idleBlock = new byte[BLOCK_SZ];
+
+        int next = 0;
+        int active = 0;
+        Arrays.fill(message, -1);
+        do {
+            for (int lane = 0; lane < LANES; lane++) {
+                if (message[lane] < 0 && next < count) {
+                    int m = next++;
+                    message[lane] = m;
+                    block[lane] = 0;
+                    numBlocks[lane] = padTail(arrays[m], offsets[m], lengths[m], tails[lane]);
+                    System.arraycopy(H_0, 0, hash[lane], 0, H_0.length);
+                    active++;
+                }
+                int m = message[lane];
+                if (m < 0) {
+                    blocks[lane] = idleBlock;
+                    blockOffsets[lane] = 0;
+                } else if (block[lane] < lengths[m] / BLOCK_SZ) {
+                    blocks[lane] = arrays[m];
+                    blockOffsets[lane] = offsets[m] + block[lane] * BLOCK_SZ;
+                } else {
+                    blocks[lane] = tails[lane];
+                    blockOffsets[lane] = (block[lane] - lengths[m] / BLOCK_SZ) * BLOCK_SZ;
+                }
+            }
+
+            compressLanes(hash, w, blocks, blockOffsets);
+
+            for (int lane = 0; lane < LANES; lane++) {
+                int m = message[lane];
+                if (m < 0 || ++block[lane] < numBlocks[lane])
+                    continue;
+                Util.intsToBytes(hash[lane], DIGEST_LENGTH, output, outOff + m * DIGEST_LENGTH);
+                message[lane] = -1;
+                active--;
             }
+        } while (active > 0 || next < count);
+    }
+
+    /**
+     * Write the padded final blocks of a message, i.e. the bytes following the last full block, to the tail buffer.
+     *
+     * @return the total number of blocks of the padded message.
+     */
+    private static int padTail(byte[] input, int off, int len, byte[] tail) {
+        int fullBlocks = len / BLOCK_SZ;
+        int remaining = len % BLOCK_SZ;
+        int tailLength = remaining + 1 + 8 <= BLOCK_SZ ? BLOCK_SZ : 2 * BLOCK_SZ;
+        System.arraycopy(input, off + fullBlocks * BLOCK_SZ, tail, 0, remaining);
+        tail[remaining] = (byte) 0x80;
+        Arrays.fill(tail, remaining + 1, tailLength - 8, (byte) 0);
+        long bitLength = len * 8L;
+        for (int i = 0; i < 8; i++)
+            tail[tailLength - 1 - i] = (byte) (bitLength >>> (i * 8));
+        return fullBlocks + tailLength / BLOCK_SZ;
+    }
+
+    /**
+     * Process one block for each of the two lanes. The rounds of the lanes are interleaved in a single loop, so that
+     * the CPU can execute the two independent dependency chains in parallel. Keeping the working variables of both
+     * lanes in locals turned out to be faster than processing more lanes with the working variables in arrays.
+     */
+    private static void compressLanes(int[][] hash, int[][] w, byte[][] blocks, int[] offsets) {
+        int[] w0 = w[0], w1 = w[1];
+        byte[] block0 = blocks[0], block1 = blocks[1];
+        for (int t = 0; t < 16; t++) {
+            int off0 = offsets[0] + t * WORD_LEN, off1 = offsets[1] + t * WORD_LEN;
+            w0[t] = Util.bytesToInt(block0[off0], block0[off0 + 1], block0[off0 + 2], block0[off0 + 3]);
+            w1[t] = Util.bytesToInt(block1[off1], block1[off1 + 1], block1[off1 + 2], block1[off1 + 3]);
+        }
+        for (int t = 16; t < NUM_ROUNDS; t++) {
+            w0[t] = smallSigmaOne(w0[t - 2]) + w0[t - 7] + smallSigmaZero(w0[t - 15]) + w0[t - 16];
+            w1[t] = smallSigmaOne(w1[t - 2]) + w1[t - 7] + smallSigmaZero(w1[t - 15]) + w1[t - 16];
+        }
 
-            // Calculate immediate hash values
-            hash[0] += a;
-            hash[1] += b;
-            hash[2] += c;
-            hash[3] += d;
-            hash[4] += e;
-            hash[5] += f;
-            hash[6] += g;
-            hash[7] += h;
+        // Set up working variables
+        int[] hash0 = hash[0], hash1 = hash[1];
+        int a0 = hash0[0], b0 = hash0[1], c0 = hash0[2], d0 = hash0[3];
+        int e0 = hash0[4], f0 = hash0[5], g0 = hash0[6], h0 = hash0[7];
+        int a1 = hash1[0], b1 = hash1[1], c1 = hash1[2], d1 = hash1[3];
+        int e1 = hash1[4], f1 = hash1[5], g1 = hash1[6], h1 = hash1[7];
+
+        // Perform rounds
+        for (int t = 0; t < NUM_ROUNDS; t++) {
+            int tOne0 = h0 + bigSigmaOne(e0) + ch(e0, f0, g0) + ROUND_CONSTANTS[t] + w0[t];
+            int tOne1 = h1 + bigSigmaOne(e1) + ch(e1, f1, g1) + ROUND_CONSTANTS[t] + w1[t];
+            int tTwo0 = bigSigmaZero(a0) + maj(a0, b0, c0);
+            int tTwo1 = bigSigmaZero(a1) + maj(a1, b1, c1);
+            h0 = g0;
+            h1 = g1;
+            g0 = f0;
+            g1 = f1;
+            f0 = e0;
+            f1 = e1;
+            e0 = d0 + tOne0;
+            e1 = d1 + tOne1;
+            d0 = c0;
+            d1 = c1;
+            c0 = b0;
+            c1 = b1;
+            b0 = a0;
+            b1 = a1;
+            a0 = tOne0 + tTwo0;
+            a1 = tOne1 + tTwo1;
         }
 
-        // Turn hash back into bytes
-        return Util.getDigest(hash, DIGEST_LENGTH, WORD_LEN);
+        // Calculate immediate hash values
+        hash0[0] += a0;
+        hash0[1] += b0;
+        hash0[2] += c0;
+        hash0[3] += d0;
+        hash0[4] += e0;
+        hash0[5] += f0;
+        hash0[6] += g0;
+        hash0[7] += h0;
+        hash1[0] += a1;
+        hash1[1] += b1;
+        hash1[2] += c1;
+        hash1[3] += d1;
+        hash1[4] += e1;
+        hash1[5] += f1;
+        hash1[6] += g1;
+        hash1[7] += h1;
     }
 
     /** SHA-256 Ch function */
@@ -126,4 +348,53 @@ public class SHA256 implements HashFunction {
     public int digestSize() {
         return DIGEST_LENGTH;
     }
+
+    /** Incremental SHA-256, keeping the intermediate hash value between blocks */
+    private static class SHA256Hasher extends IntBlockHasher {
+
+        private final int[] w = new int[NUM_ROUNDS];
+
+        private SHA256Hasher() {
+            super(H_0);
+        }
+
+        @Override
+        void compress(byte[] block, int off) {
+            SHA256.compress(hash, w, block, off);
+        }
+
+        @Override
+        void writeDigest(byte[] output, int off) {
+            Util.intsToBytes(hash, DIGEST_LENGTH, output, off);
+        }
+
+        @Override
+        void resetState() {
+            System.arraycopy(H_0, 0, hash, 0, H_0.length);
+        }
+
+        @Override
+        int digestSize() {
+            return DIGEST_LENGTH;
+        }
+
+        @Override
+        String algorithmName() {
+            return "SHA-256";
+        }
+
+        @Override
+        public Hasher copy() {
+            return new SHA256Hasher().restore(this);
+        }
+
+        @Override
+        public Hasher restore(Hasher state) {
+            if (!(state instanceof SHA256Hasher other))
+                throw new IllegalArgumentException("Cannot restore a SHA256 hasher from " + state.getClass().getName());
+            System.arraycopy(other.hash, 0, hash, 0, hash.length);
+            other.copyTo(this);
+            return this;
+        }
+    }
 }
@@ -0,0 +1,47 @@
+package qconf.hashes;
+
+/**
+ * The SHA-384 hash function as defined in NIST FIPS 180-4.
+ * SHA-384 is SHA-512 with a different initial hash value, and a digest
+ * truncated to 384 bits. Like SHA-512, it can take input of any length
+ * less than 2^128 bits.
+ *
+ * @author Gabriel Skoglund
+ */
+public class SHA384 implements HashFunction {
+
+    /** Length of the message digest in bytes. */
+    private static final int DIGEST_LENGTH = 48;
+
+    /** Block size in bytes */
+    private static final int BLOCK_SZ = 128;
+
+    /** Initial hash value */
+    private static final long[] H_0 = {
+            0xcbbb9d5dc1059ed8L, 0x629a292a367cd507L, 0x9159015a3070dd17L, 0x152fecd8f70e5939L,
+            0x67332667ffc00b31L, 0x8eb44a8768581511L, 0xdb0c2e0d64f98fa7L, 0x47b5481dbefa4fa4L
+    };
+
+    @Override
+    public Digest digest(byte[] input) {
+        return newHasher().update(input).finish();
+    }
+
+    /**
+     * @return a new {@link Hasher} producing {@value #DIGEST_LENGTH} byte digests.
+     */
+    @Override
+    public Hasher newHasher() {
+        return new SHA512.SHA512Hasher(H_0, DIGEST_LENGTH, "SHA-384");
+    }
+
+    @Override
+    public int blockSize() {
+        return BLOCK_SZ;
+    }
+
+    @Override
+    public int digestSize() {
+        return DIGEST_LENGTH;
+    }
+}
@@ -0,0 +1,242 @@
+package qconf.hashes;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The SHA-512 hash function as defined in NIST FIPS 180-4.
+ * The function turns byte input of any length into message digests of 512-bits.
+ * By specification, SHA-512 can take input of any length less than 2^128 bits.
+ * Inputs that do not fit in a single array can be hashed incrementally using
+ * {@link #newHasher()}.
+ * <p>
+ * SHA-512 works on 64-bit words and 128 byte blocks, so on 64-bit platforms it
+ * usually processes large inputs faster than SHA-256, despite having more rounds.
+ *
+ * @author Gabriel Skoglund
+ */
+public class SHA512 implements HashFunction {
+
+    /** Length of the message digest in bytes. */
+    private static final int DIGEST_LENGTH = 64;
+
+    /** Block size in bytes */
+    private static final int BLOCK_SZ = 128;
+
+    /** Number of bytes at the end of the final block holding the message length */
+    private static final int LENGTH_SZ = 16;
+
+    /** Word length in bytes. */
+    private static final int WORD_LEN = 8;
+
+    /** Number of rounds for each message block */
+    public static final int NUM_ROUNDS = 80;
+
+    /** Initial hash value */
+    private static final long[] H_0 = {
+            0x6a09e667f3bcc908L, 0xbb67ae8584caa73bL, 0x3c6ef372fe94f82bL, 0xa54ff53a5f1d36f1L,
+            0x510e527fade682d1L, 0x9b05688c2b3e6c1fL, 0x1f83d9abfb41bd6bL, 0x5be0cd19137e2179L
+    };
+
+    public static final long[] ROUND_CONSTANTS = {
+            0x428a2f98d728ae22L, 0x7137449123ef65cdL, 0xb5c0fbcfec4d3b2fL, 0xe9b5dba58189dbbcL,
+            0x3956c25bf348b538L, 0x59f111f1b605d019L, 0x923f82a4af194f9bL, 0xab1c5ed5da6d8118L,
+            0xd807aa98a3030242L, 0x12835b0145706fbeL, 0x243185be4ee4b28cL, 0x550c7dc3d5ffb4e2L,
+            0x72be5d74f27b896fL, 0x80deb1fe3b1696b1L, 0x9bdc06a725c71235L, 0xc19bf174cf692694L,
+            0xe49b69c19ef14ad2L, 0xefbe4786384f25e3L, 0x0fc19dc68b8cd5b5L, 0x240ca1cc77ac9c65L,
+            0x2de92c6f592b0275L, 0x4a7484aa6ea6e483L, 0x5cb0a9dcbd41fbd4L, 0x76f988da831153b5L,
+            0x983e5152ee66dfabL, 0xa831c66d2db43210L, 0xb00327c898fb213fL, 0xbf597fc7beef0ee4L,
+            0xc6e00bf33da88fc2L, 0xd5a79147930aa725L, 0x06ca6351e003826fL, 0x142929670a0e6e70L,
+            0x27b70a8546d22ffcL, 0x2e1b21385c26c926L, 0x4d2c6dfc5ac42aedL, 0x53380d139d95b3dfL,
+            0x650a73548baf63deL, 0x766a0abb3c77b2a8L, 0x81c2c92e47edaee6L, 0x92722c851482353bL,
+            0xa2bfe8a14cf10364L, 0xa81a664bbc423001L, 0xc24b8b70d0f89791L, 0xc76c51a30654be30L,
+            0xd192e819d6ef5218L, 0xd69906245565a910L, 0xf40e35855771202aL, 0x106aa07032bbd1b8L,
+            0x19a4c116b8d2d0c8L, 0x1e376c085141ab53L, 0x2748774cdf8eeb99L, 0x34b0bcb5e19b48a8L,
+            0x391c0cb3c5c95a63L, 0x4ed8aa4ae3418acbL, 0x5b9cca4f7763e373L, 0x682e6ff3d6b2b8a3L,
+            0x748f82ee5defb2fcL, 0x78a5636f43172f60L, 0x84c87814a1f0ab72L, 0x8cc702081a6439ecL,
+            0x90befffa23631e28L, 0xa4506cebde82bde9L, 0xbef9a3f7b2c67915L, 0xc67178f2e372532bL,
+            0xca273eceea26619cL, 0xd186b8c721c0c207L, 0xeada7dd6cde0eb1eL, 0xf57d4f7fee6ed178L,
+            0x06f067aa72176fbaL, 0x0a637dc5a2c898a6L, 0x113f9804bef90daeL, 0x1b710b35131c471bL,
+            0x28db77f523047d84L, 0x32caab7b40c72493L, 0x3c9ebe0a15c9bebcL, 0x431d67c49c100d4cL,
+            0x4cc5d4becb3e42b6L, 0x597f299cfc657e2aL, 0x5fcb6fab3ad6faecL, 0x6c44198c4a475817L
+    };
+
+    @Override
+    public Digest digest(byte[] input) {
+        return newHasher().update(input).finish();
+    }
+
+    /**
+     * @return a new {@link Hasher} producing {@value #DIGEST_LENGTH} byte digests.
+     */
+    @Override
+    public Hasher newHasher() {
+        return new SHA512Hasher(H_0, DIGEST_LENGTH, "SHA-512");
+    }
+
+    /**
+     * Process a single message block, updating the intermediate hash value.
+     *
+     * @param hash the intermediate hash value.
+     * @param w an array of length {@value #NUM_ROUNDS} to hold the message schedule.
+     * @param block the array holding the message block.
+     * @param off the offset of the message block.
+     */
+    private static void compress(long[] hash, long[] w, byte[] block, int off) {
+        // Prepare the message schedule W_t
+        for (int t = 0; t < 16; t++)
+            w[t] = Util.bytesToLong(block, off + t * WORD_LEN);
+        for (int t = 16; t < NUM_ROUNDS; t++)
+            w[t] = smallSigmaOne(w[t - 2]) + w[t - 7] + smallSigmaZero(w[t - 15]) + w[t - 16];
+
+        // Set up working variables
+        long a = hash[0], b = hash[1], c = hash[2], d = hash[3], e = hash[4], f = hash[5], g = hash[6], h = hash[7];
+
+        // Perform rounds
+        for (int t = 0; t < NUM_ROUNDS; t++) {
+            long tOne = h + bigSigmaOne(e) + ch(e, f, g) + ROUND_CONSTANTS[t] + w[t];
+            long tTwo = bigSigmaZero(a) + maj(a, b, c);
+            h = g;
+            g = f;
+            f = e;
+            e = d + tOne;
+            d = c;
+            c = b;
+            b = a;
+            a = tOne + tTwo;
+        }
+
+        // Calculate immediate hash values
+        hash[0] += a;
+        hash[1] += b;
+        hash[2] += c;
+        hash[3] += d;
+        hash[4] += e;
+        hash[5] += f;
+        hash[6] += g;
+        hash[7] += h;
+    }
+
+    /** SHA-512 Ch function */
+    private static long ch(long x, long y, long z)  {
+        return (x & y) ^ (~x & z);
+    }
+
+    /** SHA-512 Maj function */
+    private static long maj(long x, long y, long z)  {
+        return (x & y) ^ (x & z) ^ (y & z);
+    }
+
+    /** SHA-512 \Sigma_0 function */
+    private static long bigSigmaZero(long x) {
+        return Long.rotateRight(x, 28) ^ Long.rotateRight(x, 34) ^ Long.rotateRight(x, 39);
+    }
+
+    /** SHA-512 \Sigma_1 function */
+    private static long bigSigmaOne(long x) {
+        return Long.rotateRight(x, 14) ^ Long.rotateRight(x, 18) ^ Long.rotateRight(x, 41);
+    }
+
+    /** SHA-512 \sigma_0 function */
+    private static long smallSigmaZero(long x) {
+        return Long.rotateRight(x, 1) ^ Long.rotateRight(x, 8) ^ (x >>> 7);
+    }
+
+    /** SHA-512 \sigma_1 function */
+    private static long smallSigmaOne(long x) {
+        return Long.rotateRight(x, 19) ^ Long.rotateRight(x, 61) ^ (x >>> 6);
+    }
+
+    @Override
+    public int blockSize() {
+        return BLOCK_SZ;
+    }
+
+    @Override
+    public int digestSize() {
+        return DIGEST_LENGTH;
+    }
+
+    /**
+     * Incremental SHA-512, keeping the intermediate hash value between blocks. The truncated variants of SHA-512,
+     * such as SHA-384, only differ in their initial hash value and digest length.
+     */
+    static class SHA512Hasher extends BlockHasher {
+
+        private final long[] initialHash;
+        private final int digestLength;
+        private final String name;
+        private final long[] hash;
+        private final long[] w = new long[NUM_ROUNDS];
+
+        /**
+         * @param initialHash the initial hash value.
+         * @param digestLength the length of the digest in bytes, which is a prefix of the final hash value.
+         * @param name the name of the hash function.
+         */
+        SHA512Hasher(long[] initialHash, int digestLength, String name) {
+            super(BLOCK_SZ, LENGTH_SZ);
+            this.initialHash = initialHash;
+            this.digestLength = digestLength;
+            this.name = name;
+            this.hash = Arrays.copyOf(initialHash, initialHash.length);
+        }
+
+        @Override
+        void compress(byte[] block, int off) {
+            SHA512.compress(hash, w, block, off);
+        }
+
+        @Override
+        void writeDigest(byte[] output, int off) {
+            Util.longsToBytes(hash, digestLength, output, off);
+        }
+
+        @Override
+        void resetState() {
+            System.arraycopy(initialHash, 0, hash, 0, initialHash.length);
+        }
+
+        @Override
+        int hashStateSize() {
+            return hash.length * Long.BYTES;
+        }
+
+        @Override
+        void exportHashState(ByteBuffer output) {
+            for (long word : hash)
+                output.putLong(word);
+        }
+
+        @Override
+        void importHashState(ByteBuffer input) {
+            for (int i = 0; i < hash.length; i++)
+                hash[i] = input.getLong();
+        }
+
+        @Override
+        int digestSize() {
+            return digestLength;
+        }
+
+        @Override
+        String algorithmName() {
+            return name;
+        }
+
+        @Override
+        public Hasher copy() {
+            return new SHA512Hasher(initialHash, digestLength, name).restore(this);
+        }
+
+        @Override
+        public Hasher restore(Hasher state) {
+            if (!(state instanceof SHA512Hasher other) || other.initialHash != initialHash)
+                throw new IllegalArgumentException("Cannot restore a " + name + " hasher from " +
+                                                   state.getClass().getName());
+            System.arraycopy(other.hash, 0, hash, 0, hash.length);
+            other.copyTo(this);
+            return this;
+        }
+    }
+}
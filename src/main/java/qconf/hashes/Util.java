@@ -1,6 +1,7 @@
 package qconf.hashes;
 
-import java.util.Arrays;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
 /**
  * Various hash function utilities.
@@ -9,36 +10,64 @@ import java.util.Arrays;
  */
 class Util {
 
-    /**
-     * Pad an input byte array. The output will have the bit pattern
-     * [input] + 1 + 0^k + [original length encoded as a 64-bit number]
-     * where k is the smallest positive number satisfying: input length + 1 + k = 448 mod 512
-     */
-    static byte[] pad(byte[] input) {
-        long bitLen = input.length * 8L;
-        int k = (int) (448 - (bitLen + 1) % 512);
-        if (k < 0)
-            k += 512;
-        int outputLen = input.length + (k + 1) / 8 + 8;
-        byte[] output = Arrays.copyOf(input, outputLen);
-        output[input.length] = (byte) (1 << 7);
-        for (int i = 7; i >= 0; i--)
-            output[outputLen - i - 1] = (byte) (bitLen >> (i * 8));
-        return output;
-    }
-
     /** Convert 4 bytes in big endian format into a 32-bit integer */
     static int bytesToInt(byte a, byte b, byte c, byte d) {
         return ((a & 0xff) << 24) | ((b & 0xff) << 16) | ((c & 0xff) << 8) | (d & 0xff);
     }
 
-    /** Convert a hash consisting of an array of integers to a message digest */
-    static Digest getDigest(int[] hash, int digestLength, int wordLength) {
-        byte[] digest = new byte[digestLength];
-        for (int i = 0; i < digestLength; i += wordLength) {
-            for (int j = 0; j < wordLength; j++)
-                digest[i + j] = (byte) (hash[i / wordLength] >>> ((wordLength - j - 1) * Byte.SIZE));
+    /** Convert 8 bytes in big endian format, starting at the given offset, into a 64-bit integer */
+    static long bytesToLong(byte[] bytes, int off) {
+        return ((long) bytesToInt(bytes[off], bytes[off + 1], bytes[off + 2], bytes[off + 3]) << 32) |
+               (bytesToInt(bytes[off + 4], bytes[off + 5], bytes[off + 6], bytes[off + 7]) & 0xffffffffL);
+    }
+
+    /** Write the first length bytes of an array of 64-bit words to the output in big endian format */
+    static void longsToBytes(long[] words, int length, byte[] output, int off) {
+        for (int i = 0; i < length; i++) {
+            int shift = (Long.BYTES - 1 - i % Long.BYTES) * Byte.SIZE;
+            output[off + i] = (byte) (words[i / Long.BYTES] >>> shift);
+        }
+    }
+
+    /** Write the first length bytes of an array of 32-bit words to the output in big endian format */
+    static void intsToBytes(int[] words, int length, byte[] output, int off) {
+        for (int i = 0; i < length; i++) {
+            int shift = (Integer.BYTES - 1 - i % Integer.BYTES) * Byte.SIZE;
+            output[off + i] = (byte) (words[i / Integer.BYTES] >>> shift);
         }
-        return new Digest(digest);
+    }
+
+    /**
+     * Allocate a buffer for an exported hasher state, starting with the name of the hash function so that a state
+     * cannot be imported into a hasher of a different hash function.
+     *
+     * @param name the name of the hash function.
+     * @param size the size of the remaining state in bytes.
+     * @return a big endian buffer positioned after the name.
+     */
+    static ByteBuffer newState(String name, int size) {
+        byte[] nameBytes = name.getBytes(StandardCharsets.US_ASCII);
+        return ByteBuffer.allocate(1 + nameBytes.length + size).put((byte) nameBytes.length).put(nameBytes);
+    }
+
+    /**
+     * Open an exported hasher state, checking that it was exported from a hasher of the given hash function.
+     *
+     * @param name the name of the hash function.
+     * @param state the exported state.
+     * @return a big endian buffer positioned after the name.
+     * @throws IllegalArgumentException if the state is of a different hash function.
+     */
+    static ByteBuffer openState(String name, byte[] state) {
+        byte[] nameBytes = name.getBytes(StandardCharsets.US_ASCII);
+        if (state.length == 0 || (state[0] & 0xff) > state.length - 1)
+            throw new IllegalArgumentException("Malformed hasher state");
+        int stateNameLength = state[0] & 0xff;
+        if (stateNameLength != nameBytes.length ||
+                !ByteBuffer.wrap(state, 1, stateNameLength).equals(ByteBuffer.wrap(nameBytes)))
+            throw new IllegalArgumentException("Cannot import a " + name + " hasher state from a " +
+                                               new String(state, 1, stateNameLength, StandardCharsets.US_ASCII) +
+                                               " hasher state");
+        return ByteBuffer.wrap(state, 1 + stateNameLength, state.length - 1 - stateNameLength);
     }
 }
@@ -0,0 +1,60 @@
+package qconf.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * JDK Flight Recorder event for the encryption or decryption of a message. By default only operations taking at
+ * least 1 ms are recorded, which can be changed with the threshold setting of the event.
+ * <p>
+ * Usage: create the event and call {@link #begin()} before the operation, and {@link #complete} after it. When the
+ * event is not enabled, the event object is never used and is removed by the JIT compiler.
+ *
+ * @author Gabriel Skoglund
+ */
+@Name("qconf.CipherOperation")
+@Label("Cipher Operation")
+@Category({"qconf", "Cipher"})
+@Description("Encryption or decryption of a message")
+@StackTrace(false)
+@Threshold("1 ms")
+public final class CipherOperationEvent extends Event {
+
+    @Label("Algorithm")
+    String algorithm;
+
+    @Label("Mode")
+    String mode;
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+
+    /**
+     * End the operation, and record it if it is enabled and exceeds the threshold.
+     *
+     * @param algorithm the cipher, e.g. "AES-128".
+     * @param mode the mode of operation, e.g. "CBC".
+     * @param operation "encrypt" or "decrypt".
+     * @param bytes the length of the input.
+     */
+    public void complete(String algorithm, String mode, String operation, long bytes) {
+        Throughput.addCipherBytes(bytes);
+        if (shouldCommit()) {
+            this.algorithm = algorithm;
+            this.mode = mode;
+            this.operation = operation;
+            this.bytes = bytes;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package qconf.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * JDK Flight Recorder event for computing the MAC of a message. By default only operations taking at least 1 ms
+ * are recorded, which can be changed with the threshold setting of the event.
+ *
+ * @author Gabriel Skoglund
+ */
+@Name("qconf.MacOperation")
+@Label("MAC Operation")
+@Category({"qconf", "MAC"})
+@Description("Computation of the message authentication code of a message")
+@StackTrace(false)
+@Threshold("1 ms")
+public final class MacOperationEvent extends Event {
+
+    @Label("Algorithm")
+    String algorithm;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+
+    /**
+     * Check whether an event should be created for an operation that spans several calls, such as an incremental
+     * MAC computation. Unlike creating an event to check, this never allocates any memory.
+     *
+     * @return true if this event, or the periodic {@link ThroughputEvent}, is enabled.
+     */
+    public static boolean shouldBegin() {
+        return Types.MAC.isEnabled() || Types.THROUGHPUT.isEnabled();
+    }
+
+    /**
+     * End the operation, and record it if it is enabled and exceeds the threshold.
+     *
+     * @param algorithm the MAC algorithm, e.g. "HMAC-SHA256".
+     * @param bytes the length of the message.
+     */
+    public void complete(String algorithm, long bytes) {
+        Throughput.addMacBytes(bytes);
+        if (shouldCommit()) {
+            this.algorithm = algorithm;
+            this.bytes = bytes;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package qconf.jfr;
+
+import jdk.jfr.FlightRecorder;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the bytes processed by qconf operations, emitted periodically as a {@link ThroughputEvent}.
+ * The counters are only updated while the event is enabled, so they cost a single check otherwise.
+ *
+ * @author Gabriel Skoglund
+ */
+class Throughput {
+
+    private static final LongAdder cipherBytes = new LongAdder();
+    private static final LongAdder hashBytes = new LongAdder();
+    private static final LongAdder macBytes = new LongAdder();
+
+    static {
+        FlightRecorder.addPeriodicEvent(ThroughputEvent.class, Throughput::emit);
+    }
+
+    static void addCipherBytes(long bytes) {
+        if (Types.THROUGHPUT.isEnabled())
+            cipherBytes.add(bytes);
+    }
+
+    static void addHashBytes(long bytes) {
+        if (Types.THROUGHPUT.isEnabled())
+            hashBytes.add(bytes);
+    }
+
+    static void addMacBytes(long bytes) {
+        if (Types.THROUGHPUT.isEnabled())
+            macBytes.add(bytes);
+    }
+
+    private static void emit() {
+        ThroughputEvent event = new ThroughputEvent();
+        event.cipherBytes = cipherBytes.sumThenReset();
+        event.hashBytes = hashBytes.sumThenReset();
+        event.macBytes = macBytes.sumThenReset();
+        event.commit();
+    }
+}
@@ -0,0 +1,38 @@
+package qconf.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+
+/**
+ * Periodic JDK Flight Recorder event with the number of bytes processed by all qconf operations since the previous
+ * event, regardless of the thresholds of the operation events. Emitted every second by default, which can be
+ * changed with the period setting of the event.
+ *
+ * @author Gabriel Skoglund
+ */
+@Name("qconf.Throughput")
+@Label("Throughput")
+@Category("qconf")
+@Description("Bytes processed by qconf operations since the previous event")
+@StackTrace(false)
+@Period("1 s")
+public final class ThroughputEvent extends Event {
+
+    @Label("Cipher Bytes")
+    @DataAmount
+    long cipherBytes;
+
+    @Label("Hash Bytes")
+    @DataAmount
+    long hashBytes;
+
+    @Label("MAC Bytes")
+    @DataAmount
+    long macBytes;
+}
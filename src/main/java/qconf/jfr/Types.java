@@ -0,0 +1,14 @@
+package qconf.jfr;
+
+import jdk.jfr.EventType;
+
+/**
+ * The registered types of the qconf events, used to check whether an event is enabled without creating it.
+ *
+ * @author Gabriel Skoglund
+ */
+class Types {
+    static final EventType HASH = EventType.getEventType(HashOperationEvent.class);
+    static final EventType MAC = EventType.getEventType(MacOperationEvent.class);
+    static final EventType THROUGHPUT = EventType.getEventType(ThroughputEvent.class);
+}
@@ -0,0 +1,113 @@
+package qconf.kdf;
+
+import qconf.hashes.HashFunction;
+import qconf.hashes.Hasher;
+import qconf.jfr.MacOperationEvent;
+import qconf.mac.HMAC;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+/**
+ * PBKDF2 as specified by RFC 8018, deriving keys from passwords using HMAC with any block-based hash function.
+ * The iteration count determines the cost of deriving a key, and thereby the cost of guessing the password.
+ * <p>
+ * The password is only hashed into the inner and outer HMAC states once, and each iteration then restores these
+ * states and hashes the previous result, without allocating any memory. When the derived key is longer than the
+ * digest size of the hash function, its blocks are independent and are derived in parallel.
+ *
+ * @param <H> a class implementing the {@link HashFunction} interface.
+ *
+ * @author Gabriel Skoglund
+ */
+public class PBKDF2<H extends HashFunction> {
+
+    private final HMAC<H> hmac;
+
+    /**
+     * Create a new PBKDF2 instance based on the given hash function.
+     * @param hashFunctionSupplier a {@link Supplier} that provides an instance of the desired hash function.
+     */
+    public PBKDF2(Supplier<H> hashFunctionSupplier) {
+        this.hmac = new HMAC<>(hashFunctionSupplier);
+    }
+
+    /**
+     * Derive a key from a password, using the common {@link ForkJoinPool} if the key consists of several blocks.
+     * @param password the password.
+     * @param salt a salt, which should be random and unique for each password.
+     * @param iterations the number of iterations, at least 1.
+     * @param keyLength the length of the derived key in bytes, at least 1.
+     * @return the derived key.
+     * @throws IllegalArgumentException if the iteration count or key length is not positive.
+     */
+    public byte[] deriveKey(byte[] password, byte[] salt, int iterations, int keyLength) {
+        return deriveKey(password, salt, iterations, keyLength, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Derive a key from a password, deriving the blocks of the key in parallel on the given executor.
+     * See {@link #deriveKey(byte[], byte[], int, int)}.
+     * @param password the password.
+     * @param salt a salt, which should be random and unique for each password.
+     * @param iterations the number of iterations, at least 1.
+     * @param keyLength the length of the derived key in bytes, at least 1.
+     * @param executor the executor to derive the blocks of the key on.
+     * @return the derived key.
+     * @throws IllegalArgumentException if the iteration count or key length is not positive.
+     */
+    public byte[] deriveKey(byte[] password, byte[] salt, int iterations, int keyLength, Executor executor) {
+        if (iterations < 1)
+            throw new IllegalArgumentException("The iteration count must be positive, but was " + iterations);
+        if (keyLength < 1)
+            throw new IllegalArgumentException("The key length must be positive, but was " + keyLength);
+
+        // The derivation is recorded as a single operation on the derived key, rather than as one MAC per iteration
+        MacOperationEvent event = new MacOperationEvent();
+        event.begin();
+        HMAC.Keyed keyed = hmac.withKey(password);
+        int blockSize = keyed.digestSize();
+        int numBlocks = (keyLength + blockSize - 1) / blockSize;
+        byte[] key = new byte[keyLength];
+        if (numBlocks == 1) {
+            deriveBlock(keyed, salt, iterations, 1, key);
+        } else {
+            List<CompletableFuture<Void>> tasks = new ArrayList<>();
+            for (int i = 1; i <= numBlocks; i++) {
+                int blockIndex = i;
+                tasks.add(CompletableFuture.runAsync(() -> deriveBlock(keyed, salt, iterations, blockIndex, key),
+                                                     executor));
+            }
+            CompletableFuture.allOf(tasks.toArray(new CompletableFuture[0])).join();
+        }
+        event.complete("PBKDF2-" + keyed.algorithm(), keyLength);
+        return key;
+    }
+
+    /**
+     * Compute block T_i = U_1 ^ U_2 ^ ... ^ U_c of the derived key and write it to its position in the key,
+     * where U_1 = HMAC(P, S || INT(i)) and U_j = HMAC(P, U_{j-1}).
+     */
+    private static void deriveBlock(HMAC.Keyed keyed, byte[] salt, int iterations, int blockIndex, byte[] key) {
+        Hasher mac = keyed.newHasher().withoutEvents();
+        byte[] u = new byte[keyed.digestSize()];
+        byte[] t = new byte[keyed.digestSize()];
+
+        byte[] index = {(byte) (blockIndex >>> 24), (byte) (blockIndex >>> 16), (byte) (blockIndex >>> 8),
+                        (byte) blockIndex};
+        mac.update(salt).update(index).finish(u, 0);
+        System.arraycopy(u, 0, t, 0, u.length);
+        for (int j = 1; j < iterations; j++) {
+            mac.update(u).finish(u, 0);
+            for (int k = 0; k < t.length; k++)
+                t[k] ^= u[k];
+        }
+
+        int offset = (blockIndex - 1) * t.length;
+        System.arraycopy(t, 0, key, offset, Math.min(t.length, key.length - offset));
+    }
+}
@@ -0,0 +1,311 @@
+package qconf.mac;
+
+import qconf.ciphers.aes128.AES128ECB;
+import qconf.ciphers.aes128.Key;
+import qconf.hashes.Digest;
+import qconf.hashes.Hasher;
+import qconf.jfr.MacOperationEvent;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * AES-CMAC as specified by RFC 4493, a message authentication code computed by encrypting the message in CBC mode
+ * and XORing a subkey derived from the key into the last block. Unlike HMAC, the cost of a MAC is a single AES
+ * encryption per 16 byte block, without any fixed overhead for the key, which makes it well suited to short messages.
+ * <p>
+ * The subkeys K1 and K2 are derived once when the instance is created. Instances are immutable and may be shared
+ * between threads.
+ *
+ * @author Gabriel Skoglund
+ */
+public class AES128CMAC {
+
+    /** Length of the MAC in bytes. */
+    private static final int MAC_LENGTH = 16;
+
+    private static final int BLOCK_SZ = 16;
+
+    /** The constant R_128 for the subkey generation, XORed into the last byte when the shifted out bit is set */
+    private static final int RB = 0x87;
+
+    private static final String ALGORITHM = "AES-CMAC";
+
+    private final AES128ECB cipher;
+    private final byte[] k1;
+    private final byte[] k2;
+
+    /**
+     * Create a new AES-CMAC instance for the given key.
+     *
+     * @param key the 16 byte key to use. It should not be used for anything other than CMAC.
+     */
+    public AES128CMAC(Key key) {
+        this(new AES128ECB(key));
+    }
+
+    /**
+     * Create a new AES-CMAC instance using the given cipher, for instance one sharing a key schedule from a
+     * {@link qconf.ciphers.aes128.Keyring}. ECB mode carries no state between blocks, so the cipher may still
+     * be used elsewhere.
+     *
+     * @param cipher an AES-128 ECB cipher with the key to use.
+     */
+    public AES128CMAC(AES128ECB cipher) {
+        this.cipher = cipher;
+        byte[] l = new byte[BLOCK_SZ];
+        cipher.encryptBlocks(l, 0, l, 0, 1);
+        k1 = doubleSubkey(l);
+        k2 = doubleSubkey(k1);
+    }
+
+    /** Multiply the value by x in GF(2^128), i.e. shift it left by one bit and reduce it if a bit is shifted out */
+    private static byte[] doubleSubkey(byte[] value) {
+        byte[] result = new byte[BLOCK_SZ];
+        for (int i = 0; i < BLOCK_SZ - 1; i++)
+            result[i] = (byte) ((value[i] << 1) | ((value[i + 1] & 0xff) >>> 7));
+        result[BLOCK_SZ - 1] = (byte) (value[BLOCK_SZ - 1] << 1);
+        // Constant time: the reduction is masked in rather than branched on
+        result[BLOCK_SZ - 1] ^= (byte) (RB & -((value[0] & 0xff) >>> 7));
+        return result;
+    }
+
+    /**
+     * @param input the message for which to compute the MAC.
+     * @return a 16 byte CMAC {@link Digest}.
+     */
+    public Digest digest(byte[] input) {
+        return digest(input, 0, input.length);
+    }
+
+    /**
+     * @param input the array holding the message for which to compute the MAC.
+     * @param off the offset of the message in the array.
+     * @param len the length of the message.
+     * @return a 16 byte CMAC {@link Digest}.
+     * @throws IndexOutOfBoundsException if the message is out of bounds of the array.
+     */
+    public Digest digest(byte[] input, int off, int len) {
+        return newHasher().update(input, off, len).finish();
+    }
+
+    /**
+     * Compute the MACs of many independent short messages, such as records or tokens, in a single call. The messages
+     * are processed block by block in lockstep, so that each round encrypts one block of every message that is not
+     * yet complete in a single call to the cipher.
+     *
+     * @param inputs the messages for which to compute the MACs.
+     * @return an array holding the 16 byte MAC of each message, in order.
+     */
+    public byte[] macAll(byte[][] inputs) {
+        MacOperationEvent event = new MacOperationEvent();
+        event.begin();
+        int n = inputs.length;
+
+        // Order the messages by decreasing number of blocks, so that the unfinished messages are always a prefix
+        long[] keys = new long[n];
+        long totalLength = 0;
+        for (int i = 0; i < n; i++) {
+            keys[i] = ((long) numBlocks(inputs[i].length) << 32) | (n - 1 - i);
+            totalLength += inputs[i].length;
+        }
+        Arrays.sort(keys);
+        int[] order = new int[n];
+        for (int j = 0; j < n; j++)
+            order[j] = n - 1 - (int) keys[n - 1 - j];
+
+        byte[] states = new byte[n * BLOCK_SZ];
+        int active = n;
+        for (int round = 0; active > 0; round++) {
+            while (active > 0 && numBlocks(inputs[order[active - 1]].length) <= round)
+                active--;
+            for (int j = 0; j < active; j++) {
+                byte[] input = inputs[order[j]];
+                int blockOff = round * BLOCK_SZ;
+                if (round < numBlocks(input.length) - 1)
+                    xorBlock(input, blockOff, states, j * BLOCK_SZ);
+                else
+                    xorLastBlock(input, blockOff, input.length - blockOff, states, j * BLOCK_SZ);
+            }
+            cipher.encryptBlocks(states, 0, states, 0, active);
+        }
+
+        byte[] output = new byte[n * MAC_LENGTH];
+        for (int j = 0; j < n; j++)
+            System.arraycopy(states, j * BLOCK_SZ, output, order[j] * MAC_LENGTH, MAC_LENGTH);
+        event.complete(ALGORITHM, totalLength);
+        return output;
+    }
+
+    /** The number of blocks of a message of the given length, where the empty message has one (padded) block */
+    private static int numBlocks(int length) {
+        return Math.max(1, (length + BLOCK_SZ - 1) / BLOCK_SZ);
+    }
+
+    /** XOR a full block into the state */
+    private static void xorBlock(byte[] block, int off, byte[] state, int stateOff) {
+        for (int i = 0; i < BLOCK_SZ; i++)
+            state[stateOff + i] ^= block[off + i];
+    }
+
+    /**
+     * XOR the last block of a message into the state, together with K1 if the block is complete, or padded with a
+     * single 1 bit and zeroes and together with K2 if it is not.
+     */
+    private void xorLastBlock(byte[] block, int off, int len, byte[] state, int stateOff) {
+        byte[] subkey = len == BLOCK_SZ ? k1 : k2;
+        for (int i = 0; i < len; i++)
+            state[stateOff + i] ^= block[off + i];
+        if (len < BLOCK_SZ)
+            state[stateOff + len] ^= (byte) 0x80;
+        for (int i = 0; i < BLOCK_SZ; i++)
+            state[stateOff + i] ^= subkey[i];
+    }
+
+    /**
+     * Create a hasher computing the MAC of a message that is provided in several parts. After {@link Hasher#finish},
+     * the hasher is reset and may be used for a new message. The hasher does not allocate any memory apart from
+     * {@link Hasher#copy()} and {@link Hasher#finish()}, and must not be shared between threads.
+     *
+     * @return a new {@link Hasher} for MACs with this key.
+     */
+    public Hasher newHasher() {
+        return new CMACHasher(this);
+    }
+
+    /**
+     * Incremental CMAC. The last block of input is kept in the buffer until more input arrives, since the final
+     * block of the message is processed differently.
+     */
+    private static class CMACHasher implements Hasher {
+
+        private final AES128CMAC cmac;
+
+        /** The CBC chaining value */
+        private final byte[] state = new byte[BLOCK_SZ];
+
+        /** Input that has not yet been processed, which may be a full block */
+        private final byte[] buffer = new byte[BLOCK_SZ];
+        private int buffered;
+
+        /** The total number of bytes of the current message, and its flight recorder event if enabled */
+        private long length;
+        private MacOperationEvent event;
+        private boolean recordEvents = true;
+
+        private CMACHasher(AES128CMAC cmac) {
+            this.cmac = cmac;
+        }
+
+        @Override
+        public Hasher update(byte[] input, int off, int len) {
+            Objects.checkFromIndexSize(off, len, input.length);
+            if (len == 0)
+                return this;
+            beginEvent();
+            length += len;
+
+            if (buffered > 0) {
+                int n = Math.min(len, BLOCK_SZ - buffered);
+                System.arraycopy(input, off, buffer, buffered, n);
+                buffered += n;
+                off += n;
+                len -= n;
+                if (len == 0)
+                    return this;
+                // The buffer is full, and more input follows, so it is not the last block
+                processBlock(buffer, 0);
+                buffered = 0;
+            }
+            // Whole blocks are processed directly from the input, except for the last one
+            for (; len > BLOCK_SZ; off += BLOCK_SZ, len -= BLOCK_SZ)
+                processBlock(input, off);
+            System.arraycopy(input, off, buffer, 0, len);
+            buffered = len;
+            return this;
+        }
+
+        @Override
+        public Hasher update(ByteBuffer input) {
+            if (input.hasArray()) {
+                update(input.array(), input.arrayOffset() + input.position(), input.remaining());
+                input.position(input.limit());
+                return this;
+            }
+            while (input.hasRemaining()) {
+                // Only complete the buffered block when it is known not to be the last one
+                if (buffered == BLOCK_SZ) {
+                    processBlock(buffer, 0);
+                    buffered = 0;
+                }
+                beginEvent();
+                int n = Math.min(input.remaining(), BLOCK_SZ - buffered);
+                input.get(buffer, buffered, n);
+                buffered += n;
+                length += n;
+            }
+            return this;
+        }
+
+        private void processBlock(byte[] block, int off) {
+            xorBlock(block, off, state, 0);
+            cmac.cipher.encryptBlocks(state, 0, state, 0, 1);
+        }
+
+        @Override
+        public Digest finish() {
+            byte[] mac = new byte[MAC_LENGTH];
+            finish(mac, 0);
+            return new Digest(mac);
+        }
+
+        @Override
+        public int finish(byte[] output, int off) {
+            Objects.checkFromIndexSize(off, MAC_LENGTH, output.length);
+            cmac.xorLastBlock(buffer, 0, buffered, state, 0);
+            cmac.cipher.encryptBlocks(state, 0, output, off, 1);
+            if (event != null) {
+                event.complete(ALGORITHM, length);
+                event = null;
+            }
+
+            Arrays.fill(state, (byte) 0);
+            Arrays.fill(buffer, (byte) 0);
+            buffered = 0;
+            length = 0;
+            return MAC_LENGTH;
+        }
+
+        /** Start a flight recorder event if this is the start of a message, and the event is enabled */
+        private void beginEvent() {
+            if (recordEvents && length == 0 && event == null && MacOperationEvent.shouldBegin()) {
+                event = new MacOperationEvent();
+                event.begin();
+            }
+        }
+
+        @Override
+        public Hasher copy() {
+            return new CMACHasher(cmac).restore(this);
+        }
+
+        @Override
+        public Hasher restore(Hasher state) {
+            if (!(state instanceof CMACHasher other) || other.cmac != cmac)
+                throw new IllegalArgumentException("Can only restore a CMAC hasher from a hasher with the same key");
+            System.arraycopy(other.state, 0, this.state, 0, BLOCK_SZ);
+            System.arraycopy(other.buffer, 0, buffer, 0, BLOCK_SZ);
+            buffered = other.buffered;
+            length = other.length;
+            recordEvents = other.recordEvents;
+            return this;
+        }
+
+        @Override
+        public Hasher withoutEvents() {
+            recordEvents = false;
+            return this;
+        }
+    }
+}
@@ -2,8 +2,12 @@ package qconf.mac;
 
 import qconf.hashes.Digest;
 import qconf.hashes.HashFunction;
+import qconf.hashes.Hasher;
+import qconf.jfr.MacOperationEvent;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.Objects;
 import java.util.function.Supplier;
 
 /**
@@ -30,33 +34,37 @@ public class HMAC<H extends HashFunction> {
     }
 
     /**
-     * Create a hash based message digest using the given key and input.
+     * Create a hash based message digest using the given key and input. When computing several MACs with the same
+     * key, use {@link #withKey(byte[])} instead.
      * @param key the HMAC key to use. In order to ensure security, the key length should be at least equal to the
      *            digest size of the underlying hash function.
      * @param input the message for which to compute the MAC.
      * @return a HMAC {@link Digest}.
      */
     public Digest digest(byte[] key, byte[] input) {
-        key = makeKeyBlockSized(key);
-
-        byte[] inner = new byte[hashFunction.blockSize() + input.length];
-        byte[] innerKey = xorKey(key, INNER_PAD_BYTE);
-        System.arraycopy(innerKey, 0, inner, 0, hashFunction.blockSize());
-        System.arraycopy(input, 0, inner, hashFunction.blockSize(), input.length);
-        inner = hashFunction.digest(inner).asBytes();
-
-        byte[] outer = new byte[hashFunction.blockSize() + hashFunction.digestSize()];
-        byte[] outerKey = xorKey(key, OUTER_PAD_BYTE);
-        System.arraycopy(outerKey, 0, outer, 0, hashFunction.blockSize());
-        System.arraycopy(inner, 0, outer, hashFunction.blockSize(), inner.length);
+        return withKey(key).digest(input);
+    }
 
-        return hashFunction.digest(outer);
+    /**
+     * Prepare the HMAC for a fixed key. The inner and outer padded keys are hashed once, and the resulting states of
+     * the hash function are reused for every message, so that each MAC only costs the blocks of the message itself
+     * and a single outer block.
+     * @param key the HMAC key to use. In order to ensure security, the key length should be at least equal to the
+     *            digest size of the underlying hash function.
+     * @return a {@link Keyed} HMAC for the key.
+     */
+    public Keyed withKey(byte[] key) {
+        key = makeKeyBlockSized(key);
+        // The hashes of the HMAC are internal, and only the MAC itself is recorded
+        Hasher inner = hashFunction.newHasher().withoutEvents().update(xorKey(key, INNER_PAD_BYTE));
+        Hasher outer = hashFunction.newHasher().withoutEvents().update(xorKey(key, OUTER_PAD_BYTE));
+        return new Keyed(inner, outer, hashFunction.digestSize(), "HMAC-" + hashFunction.getClass().getSimpleName());
     }
 
     /** Ensure that the key is the same size as the block size of the hash algorithm */
     private byte[] makeKeyBlockSized(byte[] key) {
         if (key.length > hashFunction.blockSize())
-            key = hashFunction.digest(key).asBytes();
+            key = hashFunction.newHasher().withoutEvents().update(key).finish().asBytes();
         if (key.length < hashFunction.blockSize())
             return Arrays.copyOf(key, hashFunction.blockSize());
         return key;
@@ -70,4 +78,170 @@ public class HMAC<H extends HashFunction> {
 
         return xoredKey;
     }
+
+    /**
+     * A HMAC with a fixed key, holding the state of the hash function after the inner and outer padded keys.
+     * Instances are immutable and may be shared between threads. Each thread computing MACs with {@link #digest}
+     * reuses its own hasher, so that a MAC only allocates the resulting {@link Digest}.
+     */
+    public static class Keyed {
+
+        private final Hasher inner;
+        private final Hasher outer;
+        private final int digestSize;
+        private final String algorithm;
+
+        /** The hasher of each thread computing MACs with {@link #digest} */
+        private final ThreadLocal<Hasher> hashers = ThreadLocal.withInitial(this::newHasher);
+
+        private Keyed(Hasher inner, Hasher outer, int digestSize, String algorithm) {
+            this.inner = inner;
+            this.outer = outer;
+            this.digestSize = digestSize;
+            this.algorithm = algorithm;
+        }
+
+        /**
+         * @param input the message for which to compute the MAC.
+         * @return a HMAC {@link Digest}.
+         */
+        public Digest digest(byte[] input) {
+            return digest(input, 0, input.length);
+        }
+
+        /**
+         * @param input the array holding the message for which to compute the MAC.
+         * @param off the offset of the message in the array.
+         * @param len the length of the message.
+         * @return a HMAC {@link Digest}.
+         * @throws IndexOutOfBoundsException if the message is out of bounds of the array.
+         */
+        public Digest digest(byte[] input, int off, int len) {
+            // Checked before the hasher of the thread is used, so that it is never left with a partial message
+            Objects.checkFromIndexSize(off, len, input.length);
+            return hashers.get().update(input, off, len).finish();
+        }
+
+        /**
+         * Create a hasher computing the MAC of a message that is provided in several parts. After
+         * {@link Hasher#finish}, the hasher is reset and may be used for a new message with the same key. Apart from
+         * {@link Hasher#copy()}, the hasher does not allocate any memory, which makes it suitable for computing many
+         * MACs in a loop. Unlike this instance, the hasher must not be shared between threads.
+         *
+         * @return a new {@link Hasher} for MACs with this key.
+         */
+        public Hasher newHasher() {
+            return new HMACHasher(this, inner.copy(), outer.copy());
+        }
+
+        /**
+         * @return the size of the MACs in bytes, i.e. the digest size of the hash function.
+         */
+        public int digestSize() {
+            return digestSize;
+        }
+
+        /**
+         * @return the name of the MAC algorithm, e.g. "HMAC-SHA256".
+         */
+        public String algorithm() {
+            return algorithm;
+        }
+    }
+
+    /** Incremental HMAC, restoring the saved inner and outer states of a {@link Keyed} HMAC for each message */
+    private static class HMACHasher implements Hasher {
+
+        private final Keyed keyed;
+        private final Hasher inner;
+        private final Hasher outer;
+        private final byte[] innerDigest;
+
+        /** The total number of bytes of the current message, and its flight recorder event if enabled */
+        private long length;
+        private MacOperationEvent event;
+        private boolean recordEvents = true;
+
+        private HMACHasher(Keyed keyed, Hasher inner, Hasher outer) {
+            this.keyed = keyed;
+            this.inner = inner;
+            this.outer = outer;
+            this.innerDigest = new byte[keyed.digestSize];
+        }
+
+        @Override
+        public Hasher update(byte[] input, int off, int len) {
+            beginEvent();
+            inner.update(input, off, len);
+            length += len;
+            return this;
+        }
+
+        @Override
+        public Hasher update(ByteBuffer input) {
+            beginEvent();
+            length += input.remaining();
+            inner.update(input);
+            return this;
+        }
+
+        @Override
+        public Digest finish() {
+            inner.finish(innerDigest, 0);
+            inner.restore(keyed.inner);
+            Digest mac = outer.restore(keyed.outer).update(innerDigest).finish();
+            completeEvent();
+            return mac;
+        }
+
+        @Override
+        public int finish(byte[] output, int off) {
+            inner.finish(innerDigest, 0);
+            inner.restore(keyed.inner);
+            int written = outer.restore(keyed.outer).update(innerDigest).finish(output, off);
+            completeEvent();
+            return written;
+        }
+
+        /** Start a flight recorder event if this is the start of a message, and the event is enabled */
+        private void beginEvent() {
+            if (recordEvents && length == 0 && event == null && MacOperationEvent.shouldBegin()) {
+                event = new MacOperationEvent();
+                event.begin();
+            }
+        }
+
+        /** End the flight recorder event of the message, if any, and reset the message length */
+        private void completeEvent() {
+            if (event != null) {
+                event.complete(keyed.algorithm, length);
+                event = null;
+            }
+            length = 0;
+        }
+
+        @Override
+        public Hasher copy() {
+            HMACHasher copy = new HMACHasher(keyed, inner.copy(), outer.copy());
+            copy.length = length;
+            copy.recordEvents = recordEvents;
+            return copy;
+        }
+
+        @Override
+        public Hasher restore(Hasher state) {
+            if (!(state instanceof HMACHasher other) || other.keyed != keyed)
+                throw new IllegalArgumentException("Can only restore a HMAC hasher from a hasher with the same key");
+            inner.restore(other.inner);
+            length = other.length;
+            recordEvents = other.recordEvents;
+            return this;
+        }
+
+        @Override
+        public Hasher withoutEvents() {
+            recordEvents = false;
+            return this;
+        }
+    }
 }
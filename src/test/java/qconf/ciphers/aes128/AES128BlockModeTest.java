@@ -2,14 +2,27 @@ package qconf.ciphers.aes128;
 
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
 import java.util.HexFormat;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 abstract class AES128BlockModeTest {
 
+    private static final byte[] LLAMA_TEXT = ("The llama (Lama glama) is a domesticated South American camelid, " +
+            "widely used as a meat and pack animal by Andean cultures since the Pre-Columbian era. Llamas are social " +
+            "animals and live with others as a herd.").getBytes(StandardCharsets.US_ASCII);
+
     /** Return an instance of this particular AES mode */
     abstract AES128BlockMode getCipher(Key key);
 
@@ -69,4 +82,52 @@ abstract class AES128BlockModeTest {
                 "others as a herd.").getBytes(StandardCharsets.US_ASCII);
         assertArrayEquals(expected, getCipher(new Key(key)).decrypt(ciphertext));
     }
+
+    @Test
+    void encryptionOfBuffersGivesExpectedResult() throws Key.InvalidKeyException, AES128BlockMode.InvalidInputLengthException {
+        byte[] key = "Be a happy llama".getBytes(StandardCharsets.US_ASCII);
+        byte[] expected = getCiphertextForSeveralBlocks();
+        for (boolean direct : new boolean[]{false, true}) {
+            ByteBuffer src = direct ? ByteBuffer.allocateDirect(LLAMA_TEXT.length) : ByteBuffer.allocate(LLAMA_TEXT.length);
+            src.put(LLAMA_TEXT).flip();
+            ByteBuffer dst = direct ? ByteBuffer.allocateDirect(expected.length) : ByteBuffer.allocate(expected.length);
+            getCipher(new Key(key)).encrypt(src, dst);
+            assertFalse(src.hasRemaining());
+            byte[] actual = new byte[expected.length];
+            dst.flip().get(actual);
+            assertArrayEquals(expected, actual);
+        }
+    }
+
+    @Test
+    void decryptionOfBufferInPlaceGivesExpectedResult() throws Key.InvalidKeyException, AES128BlockMode.InvalidInputLengthException {
+        byte[] key = "Be a happy llama".getBytes(StandardCharsets.US_ASCII);
+        byte[] ciphertext = getCiphertextForSeveralBlocks();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(ciphertext.length).put(ciphertext).flip();
+        getCipher(new Key(key)).decrypt(buffer, buffer.duplicate());
+        byte[] actual = new byte[LLAMA_TEXT.length];
+        buffer.flip().get(actual);
+        assertArrayEquals(LLAMA_TEXT, actual);
+    }
+
+    @Test
+    void channelsGiveExpectedResult() throws Key.InvalidKeyException, IOException {
+        byte[] key = "Be a happy llama".getBytes(StandardCharsets.US_ASCII);
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        try (WritableByteChannel channel = getCipher(new Key(key)).encryptingChannel(Channels.newChannel(sink))) {
+            // Write the plaintext in pieces that do not line up with the block size
+            for (int i = 0; i < LLAMA_TEXT.length; i += 7)
+                channel.write(ByteBuffer.wrap(LLAMA_TEXT, i, Math.min(7, LLAMA_TEXT.length - i)));
+        }
+        assertArrayEquals(getCiphertextForSeveralBlocks(), sink.toByteArray());
+
+        InputStream source = new ByteArrayInputStream(sink.toByteArray());
+        ByteArrayOutputStream plaintext = new ByteArrayOutputStream();
+        try (ReadableByteChannel channel = getCipher(new Key(key)).decryptingChannel(Channels.newChannel(source))) {
+            ByteBuffer buffer = ByteBuffer.allocate(5);
+            while (channel.read(buffer.clear()) >= 0)
+                plaintext.write(buffer.array(), 0, buffer.position());
+        }
+        assertArrayEquals(LLAMA_TEXT, plaintext.toByteArray());
+    }
 }
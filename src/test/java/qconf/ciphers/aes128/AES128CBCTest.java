@@ -1,9 +1,11 @@
 package qconf.ciphers.aes128;
 
 import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import java.util.HexFormat;
+import java.util.Random;
 
 public class AES128CBCTest extends AES128BlockModeTest {
 
@@ -16,6 +18,17 @@ public class AES128CBCTest extends AES128BlockModeTest {
                      () -> new AES128CBC(key, new byte[]{1}));
     }
 
+    @Test
+    public void parallelDecryptionMatchesSerialDecryption() throws Exception {
+        Key key = new Key(HexFormat.of().parseHex("2b7e151628aed2a6abf7158809cf4f3c"));
+        byte[] ciphertext = new byte[10 * AES128.PARALLEL_CHUNK_SZ + AES128.BLOCK_SZ];
+        new Random(42).nextBytes(ciphertext);
+        AES128CBC cipher = new AES128CBC(key, iv);
+        assertArrayEquals(cipher.decrypt(ciphertext), cipher.decryptParallel(ciphertext));
+        assertThrows(AES128BlockMode.InvalidInputLengthException.class,
+                     () -> cipher.decryptParallel(new byte[ciphertext.length + 1]));
+    }
+
     @Override
     AES128BlockMode getCipher(Key key) {
         try {
@@ -0,0 +1,70 @@
+package qconf.ciphers.aes128;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AES128CTRFileTest {
+
+    private static final BigInteger initialCounterValue =
+            new BigInteger(HexFormat.of().parseHex("0123456789abcdef0123456789abcdef"));
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void fileContentsMatchCTREncryption() throws Exception {
+        Key key = new Key(HexFormat.of().parseHex("2b7e151628aed2a6abf7158809cf4f3c"));
+        byte[] plaintext = randomBytes(1000);
+        Path path = dir.resolve("file");
+        try (AES128CTRFile file = new AES128CTRFile(path, key, new AES128CTR.Counter(initialCounterValue))) {
+            file.write(0, Arrays.copyOfRange(plaintext, 0, 333));
+            file.write(333, Arrays.copyOfRange(plaintext, 333, 1000));
+        }
+        byte[] expected = new AES128CTR(key, new AES128CTR.Counter(initialCounterValue)).encrypt(plaintext);
+        assertArrayEquals(expected, Files.readAllBytes(path));
+    }
+
+    @Test
+    void slicesCanBeReadAndWrittenAtAnyOffset() throws Exception {
+        Key key = new Key(HexFormat.of().parseHex("2b7e151628aed2a6abf7158809cf4f3c"));
+        byte[] plaintext = randomBytes(1000);
+        byte[] update = randomBytes(50);
+        try (AES128CTRFile file = new AES128CTRFile(dir.resolve("file"), key,
+                                                    new AES128CTR.Counter(initialCounterValue))) {
+            file.write(0, plaintext);
+            assertArrayEquals(Arrays.copyOfRange(plaintext, 517, 600), file.read(517, 83));
+
+            file.write(123, update);
+            System.arraycopy(update, 0, plaintext, 123, update.length);
+            assertArrayEquals(plaintext, file.read(0, plaintext.length));
+        }
+    }
+
+    @Test
+    void readingBeyondEndOfFileThrowsException() throws Key.InvalidKeyException, IOException {
+        Key key = new Key(HexFormat.of().parseHex("2b7e151628aed2a6abf7158809cf4f3c"));
+        try (AES128CTRFile file = new AES128CTRFile(dir.resolve("file"), key,
+                                                    new AES128CTR.Counter(initialCounterValue))) {
+            file.write(0, new byte[10]);
+            assertThrows(EOFException.class, () -> file.read(5, 6));
+        }
+    }
+
+    private static byte[] randomBytes(int len) {
+        byte[] bytes = new byte[len];
+        new Random(len).nextBytes(bytes);
+        return bytes;
+    }
+}
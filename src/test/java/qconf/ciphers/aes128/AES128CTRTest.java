@@ -1,7 +1,16 @@
 package qconf.ciphers.aes128;
 
+import org.junit.jupiter.api.Test;
+
 import java.math.BigInteger;
+import java.util.Arrays;
 import java.util.HexFormat;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 public class AES128CTRTest extends AES128StreamModeTest {
 
@@ -36,4 +45,62 @@ public class AES128CTRTest extends AES128StreamModeTest {
                 "0a99921affe52533c04dd7d3ad9e2856633cd1e88b95c3c76fcf0568be78c952c3e6e9c3dd87feaa03e4555151c713" +
                 "a119b348ddac6b2c4e2dc598bc1c1e8d806602cf1a01ce781387e187c92744261a9db");
     }
+
+    @Test
+    void parallelEncryptionMatchesSerialEncryption() throws Key.InvalidKeyException {
+        Key key = new Key(HexFormat.of().parseHex("2b7e151628aed2a6abf7158809cf4f3c"));
+        byte[] plaintext = new byte[10 * AES128.PARALLEL_CHUNK_SZ + 5];
+        new Random(42).nextBytes(plaintext);
+
+        AES128CTR serial = (AES128CTR) getCipher(key);
+        AES128CTR parallel = (AES128CTR) getCipher(key);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            assertArrayEquals(serial.encrypt(plaintext), parallel.encryptParallel(plaintext, executor));
+            assertArrayEquals(serial.decrypt(plaintext), parallel.decryptParallel(plaintext));
+        } finally {
+            executor.shutdown();
+        }
+        // The counters should be left in the same state
+        assertArrayEquals(serial.encrypt(new byte[AES128.BLOCK_SZ]), parallel.encrypt(new byte[AES128.BLOCK_SZ]));
+    }
+
+    @Test
+    void smallCounterValueGivesExpectedResult() throws Exception {
+        Key key = new Key(HexFormat.of().parseHex("2b7e151628aed2a6abf7158809cf4f3c"));
+        byte[] counterBlock = HexFormat.of().parseHex("00000000000000000000000000000001");
+        byte[] expected = new AES128ECB(key).encrypt(counterBlock);
+        byte[] actual = new AES128CTR(key, new AES128CTR.Counter(BigInteger.ONE)).encrypt(new byte[AES128.BLOCK_SZ]);
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    void counterCarriesIntoUpperHalf() throws Key.InvalidKeyException {
+        Key key = new Key(HexFormat.of().parseHex("2b7e151628aed2a6abf7158809cf4f3c"));
+        byte[] expected = new AES128CTR(key, new AES128CTR.Counter(BigInteger.ONE.shiftLeft(64)))
+                .encrypt(new byte[AES128.BLOCK_SZ]);
+        byte[] actual = new AES128CTR(key, new AES128CTR.Counter(0, -1)).encrypt(new byte[2 * AES128.BLOCK_SZ]);
+        assertArrayEquals(expected, Arrays.copyOfRange(actual, AES128.BLOCK_SZ, 2 * AES128.BLOCK_SZ));
+    }
+
+    @Test
+    void seekAllowsDecryptionToStartAtAnyBlock() throws Key.InvalidKeyException {
+        Key key = new Key(HexFormat.of().parseHex("2b7e151628aed2a6abf7158809cf4f3c"));
+        byte[] plaintext = new byte[100];
+        new Random(42).nextBytes(plaintext);
+        byte[] ciphertext = getCipher(key).encrypt(plaintext);
+
+        AES128CTR.Counter counter = new AES128CTR.Counter(initialCounterValue);
+        AES128CTR cipher = new AES128CTR(key, counter);
+        cipher.encrypt(new byte[1000]);
+        counter.seek(3);
+        assertArrayEquals(Arrays.copyOfRange(plaintext, 48, 100),
+                          cipher.decrypt(Arrays.copyOfRange(ciphertext, 48, 100)));
+    }
+
+    @Test
+    void seekRejectsNegativeBlockIndex() {
+        AES128CTR.Counter counter = new AES128CTR.Counter(BigInteger.valueOf(5));
+        assertThrows(IllegalArgumentException.class, () -> counter.seek(-1));
+    }
 }
@@ -0,0 +1,69 @@
+package qconf.ciphers.aes128;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AES128ContextTest {
+
+    private static final byte[] keyBytes = HexFormat.of().parseHex("2b7e151628aed2a6abf7158809cf4f3c");
+
+    @Test
+    void contextMatchesModeInstances() throws Exception {
+        Key key = new Key(keyBytes);
+        AES128Context context = new AES128Context(key);
+        byte[] iv = HexFormat.of().parseHex("f0f1f2f3f4f5f6f7f8f9fafbfcfdfeff");
+        byte[] plaintext = new byte[100];
+        new Random(42).nextBytes(plaintext);
+        byte[] blocks = new byte[96];
+        System.arraycopy(plaintext, 0, blocks, 0, blocks.length);
+
+        assertArrayEquals(new AES128ECB(key).encrypt(blocks), context.encryptECB(blocks));
+        assertArrayEquals(blocks, context.decryptECB(context.encryptECB(blocks)));
+        assertArrayEquals(new AES128CBC(key, iv).encrypt(blocks), context.encryptCBC(iv, blocks));
+        assertArrayEquals(blocks, context.decryptCBC(iv, context.encryptCBC(iv, blocks)));
+        AES128CTR ctr = new AES128CTR(key, new AES128CTR.Counter(new BigInteger(1, iv)));
+        assertArrayEquals(ctr.encrypt(plaintext), context.encryptCTR(iv, plaintext));
+        assertArrayEquals(plaintext, context.decryptCTR(iv, context.encryptCTR(iv, plaintext)));
+
+        assertThrows(IllegalArgumentException.class, () -> context.encryptCTR(new byte[12], plaintext));
+    }
+
+    @Test
+    void sharedContextGivesCorrectResultsOnManyThreads() throws Exception {
+        AES128Context context = new AES128Context(new Key(keyBytes));
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<?>> tasks = new ArrayList<>();
+            for (int t = 0; t < 64; t++) {
+                int seed = t;
+                tasks.add(executor.submit(() -> {
+                    Random random = new Random(seed);
+                    for (int i = 0; i < 200; i++) {
+                        byte[] iv = ByteBuffer.allocate(16).putInt(seed).putInt(i).array();
+                        byte[] plaintext = new byte[16 * random.nextInt(20)];
+                        random.nextBytes(plaintext);
+                        assertArrayEquals(plaintext, context.decryptCBC(iv, context.encryptCBC(iv, plaintext)));
+                        assertArrayEquals(plaintext, context.decryptCTR(iv, context.encryptCTR(iv, plaintext)));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> task : tasks)
+                task.get();
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
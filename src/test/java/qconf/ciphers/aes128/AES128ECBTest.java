@@ -1,6 +1,13 @@
 package qconf.ciphers.aes128;
 
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
 import java.util.HexFormat;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 class AES128ECBTest extends AES128BlockModeTest {
 
@@ -22,4 +29,44 @@ class AES128ECBTest extends AES128BlockModeTest {
                 "b682ccaebaedb968fac94bcf4b68b959acbe6c5b5c906fd21bfd3ba315b9b153b449fa6fd440a75ac6b7f121f8dfcea6" +
                 "6e3de2a52e9be2597fb8d843bb587e38926d7f8a5d9fe7d3dc4c9b7ebd9e1741a1422de8");
     }
+
+    @Test
+    void blockOperationsWorkAtOffsetsAndInPlace() throws Key.InvalidKeyException {
+        byte[] plaintext = HexFormat.of().parseHex("3243f6a8885a308d313198a2e0370734");
+        AES128 cipher = getCipher(new Key(HexFormat.of().parseHex("2b7e151628aed2a6abf7158809cf4f3c")));
+        byte[] buffer = new byte[3 * AES128.BLOCK_SZ];
+        System.arraycopy(plaintext, 0, buffer, AES128.BLOCK_SZ, AES128.BLOCK_SZ);
+
+        cipher.encryptBlock(buffer, AES128.BLOCK_SZ, buffer, 2 * AES128.BLOCK_SZ);
+        assertArrayEquals(getCiphertextForOneBlock(), Arrays.copyOfRange(buffer, 32, 48));
+
+        cipher.decryptBlock(buffer, 2 * AES128.BLOCK_SZ, buffer, 2 * AES128.BLOCK_SZ);
+        assertArrayEquals(plaintext, Arrays.copyOfRange(buffer, 32, 48));
+    }
+
+    @Test
+    void batchAndParallelEncryptionMatchSerialEncryption() throws Exception {
+        AES128ECB cipher = new AES128ECB(new Key(HexFormat.of().parseHex("2b7e151628aed2a6abf7158809cf4f3c")));
+        byte[] plaintext = new byte[10 * AES128.PARALLEL_CHUNK_SZ];
+        new Random(42).nextBytes(plaintext);
+        byte[] expected = cipher.encrypt(plaintext);
+
+        assertArrayEquals(expected, cipher.encryptParallel(plaintext));
+        assertArrayEquals(plaintext, cipher.decryptParallel(expected));
+
+        byte[] batch = Arrays.copyOf(plaintext, plaintext.length);
+        cipher.encryptBlocks(batch, 0, batch, 0, batch.length / AES128.BLOCK_SZ);
+        assertArrayEquals(expected, batch);
+        assertThrows(IndexOutOfBoundsException.class, () -> cipher.encryptBlocks(batch, 16, batch, 16, batch.length / AES128.BLOCK_SZ));
+    }
+
+    @Test
+    void blockCountsThatOverflowAreRejected() throws Exception {
+        AES128ECB cipher = new AES128ECB(new Key(HexFormat.of().parseHex("2b7e151628aed2a6abf7158809cf4f3c")));
+        byte[] block = new byte[16];
+        assertThrows(IndexOutOfBoundsException.class, () -> cipher.encryptBlocks(block, 0, block, 0, 1 << 28));
+        assertThrows(IndexOutOfBoundsException.class, () -> cipher.decryptBlocks(block, 0, block, 0, 1 << 28));
+        assertThrows(IllegalArgumentException.class, () -> cipher.encryptBlocks(block, 0, block, 0, -1));
+        assertThrows(IllegalArgumentException.class, () -> cipher.decryptBlocks(block, 0, block, 0, -1));
+    }
 }
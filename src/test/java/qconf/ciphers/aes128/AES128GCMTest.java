@@ -0,0 +1,132 @@
+package qconf.ciphers.aes128;
+
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AES128GCMTest {
+
+    // Test cases 3 and 4 from "The Galois/Counter Mode of Operation (GCM)" by McGrew and Viega
+    private static final byte[] key = HexFormat.of().parseHex("feffe9928665731c6d6a8f9467308308");
+    private static final byte[] nonce = HexFormat.of().parseHex("cafebabefacedbaddecaf888");
+    private static final byte[] plaintext = HexFormat.of().parseHex(
+            "d9313225f88406e5a55909c5aff5269a86a7a9531534f7da2e4c303d8a318a721c3c0c95956809532fcf0e2449a6b525" +
+            "b16aedf5aa0de657ba637b391aafd255");
+    private static final byte[] ciphertext = HexFormat.of().parseHex(
+            "42831ec2217774244b7221b784d0d49ce3aa212f2c02a4e035c17e2329aca12e21d514b25466931c7d8f6a5aac84aa05" +
+            "1ba30b396a0aac973d58e091473f5985");
+    private static final byte[] aad = HexFormat.of().parseHex("feedfacedeadbeeffeedfacedeadbeefabaddad2");
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+
+    @Test
+    void emptyMessageGivesExpectedTag() throws Exception {
+        AES128GCM cipher = new AES128GCM(new Key(new byte[Key.LENGTH]));
+        assertArrayEquals(HexFormat.of().parseHex("58e2fccefa7e3061367f1d57a4e7455a"),
+                          cipher.encrypt(new byte[12], new byte[0], new byte[0]));
+    }
+
+    @Test
+    void encryptionGivesExpectedResult() throws Exception {
+        AES128GCM cipher = new AES128GCM(new Key(key));
+        byte[] tag = HexFormat.of().parseHex("4d5c2af327cd64a62cf35abd2ba6fab4");
+        assertArrayEquals(concat(ciphertext, tag), cipher.encrypt(nonce, new byte[0], plaintext));
+    }
+
+    @Test
+    void encryptionWithAADGivesExpectedResult() throws Exception {
+        AES128GCM cipher = new AES128GCM(new Key(key));
+        byte[] tag = HexFormat.of().parseHex("5bc94fbc3221a5db94fae95ae7121a47");
+        byte[] expected = concat(Arrays.copyOf(ciphertext, 60), tag);
+        assertArrayEquals(expected, cipher.encrypt(nonce, aad, Arrays.copyOf(plaintext, 60)));
+        assertArrayEquals(Arrays.copyOf(plaintext, 60), cipher.decrypt(nonce, aad, expected));
+    }
+
+    @Test
+    void resultMatchesJavaxCryptoForAllNonceLengths() throws Exception {
+        Random random = new Random(42);
+        AES128GCM cipher = new AES128GCM(new Key(key));
+        Cipher reference = Cipher.getInstance("AES/GCM/NoPadding");
+        for (int length : new int[]{1, 15, 16, 17, 100, 1000}) {
+            for (int nonceLength : new int[]{1, 8, 12, 16, 60}) {
+                byte[] message = new byte[length];
+                byte[] n = new byte[nonceLength];
+                byte[] a = new byte[length / 3];
+                random.nextBytes(message);
+                random.nextBytes(n);
+                random.nextBytes(a);
+                reference.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"), new GCMParameterSpec(128, n));
+                reference.updateAAD(a);
+                byte[] expected = reference.doFinal(message);
+                assertArrayEquals(expected, cipher.encrypt(n, a, message));
+                assertArrayEquals(message, cipher.decrypt(n, a, expected));
+            }
+        }
+    }
+
+    @Test
+    void incrementalEncryptionInPartsMatchesOneShot() throws Exception {
+        AES128GCM cipher = new AES128GCM(new Key(key));
+        byte[] message = new byte[1000];
+        new Random(42).nextBytes(message);
+        byte[] expected = cipher.encrypt(nonce, aad, message);
+
+        AES128GCM.Encryptor encryptor = cipher.encryptor(nonce);
+        encryptor.updateAAD(aad, 0, 7);
+        encryptor.updateAAD(aad, 7, aad.length - 7);
+        byte[] output = new byte[message.length + AES128GCM.TAG_LENGTH];
+        int[] parts = {0, 1, 15, 16, 17, 300, 651};
+        for (int i = 0, off = 0; i < parts.length; off += parts[i++])
+            encryptor.update(message, off, parts[i], output, off);
+        encryptor.finish(output, message.length);
+        assertArrayEquals(expected, output);
+
+        // In-place decryption, also in parts
+        AES128GCM.Decryptor decryptor = cipher.decryptor(nonce);
+        decryptor.updateAAD(aad);
+        decryptor.update(output, 0, 333, output, 0);
+        decryptor.update(output, 333, message.length - 333, output, 333);
+        decryptor.verify(output, message.length);
+        assertArrayEquals(message, Arrays.copyOf(output, message.length));
+    }
+
+    @Test
+    void modifiedMessageFailsVerification() throws Exception {
+        AES128GCM cipher = new AES128GCM(new Key(key));
+        byte[] encrypted = cipher.encrypt(nonce, aad, plaintext);
+        for (int i = 0; i < encrypted.length; i += 7) {
+            byte[] modified = encrypted.clone();
+            modified[i] ^= 1;
+            assertThrows(AES128GCM.InvalidTagException.class, () -> cipher.decrypt(nonce, aad, modified));
+        }
+        byte[] modifiedAad = aad.clone();
+        modifiedAad[0] ^= 1;
+        assertThrows(AES128GCM.InvalidTagException.class, () -> cipher.decrypt(nonce, modifiedAad, encrypted));
+        assertThrows(AES128GCM.InvalidTagException.class, () -> cipher.decrypt(nonce, aad, new byte[15]));
+    }
+
+    @Test
+    void misuseThrowsException() throws Exception {
+        AES128GCM cipher = new AES128GCM(new Key(key));
+        assertThrows(AES128GCM.InvalidNonceLengthException.class, () -> cipher.encryptor(new byte[0]));
+
+        AES128GCM.Encryptor encryptor = cipher.encryptor(nonce);
+        encryptor.update(plaintext);
+        assertThrows(IllegalStateException.class, () -> encryptor.updateAAD(aad));
+        encryptor.finish();
+        assertThrows(IllegalStateException.class, () -> encryptor.update(plaintext));
+        assertThrows(IllegalStateException.class, encryptor::finish);
+    }
+}
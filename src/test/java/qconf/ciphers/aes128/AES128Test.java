@@ -0,0 +1,36 @@
+package qconf.ciphers.aes128;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class AES128Test {
+
+    @Test
+    void xorMatchesBytewiseXorForAllLengthsAndOffsets() {
+        Random random = new Random(42);
+        byte[] a = new byte[200];
+        byte[] b = new byte[200];
+        random.nextBytes(a);
+        random.nextBytes(b);
+        for (int len = 0; len <= 150; len++) {
+            for (int off = 0; off < 9; off++) {
+                byte[] expected = new byte[len];
+                for (int i = 0; i < len; i++)
+                    expected[i] = (byte) (a[off + i] ^ b[2 * off + i]);
+
+                byte[] out = new byte[len + 3];
+                AES128.xor(a, off, b, 2 * off, out, 3, len);
+                assertArrayEquals(expected, Arrays.copyOfRange(out, 3, 3 + len));
+
+                // In place, with the output being the same range as the first input
+                byte[] inPlace = a.clone();
+                AES128.xor(inPlace, off, b, 2 * off, inPlace, off, len);
+                assertArrayEquals(expected, Arrays.copyOfRange(inPlace, off, off + len));
+            }
+        }
+    }
+}
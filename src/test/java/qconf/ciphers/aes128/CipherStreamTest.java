@@ -0,0 +1,49 @@
+package qconf.ciphers.aes128;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CipherStreamTest {
+
+    private static final byte[] key = HexFormat.of().parseHex("2b7e151628aed2a6abf7158809cf4f3c");
+    private static final byte[] iv = HexFormat.of().parseHex("0123456789abcdef0123456789abcdef");
+
+    @Test
+    void streamsRoundTripLargeMessage() throws Exception {
+        byte[] plaintext = new byte[100_003];
+        new Random(42).nextBytes(plaintext);
+
+        ByteArrayOutputStream ciphertext = new ByteArrayOutputStream();
+        try (OutputStream out = new CipherOutputStream(ciphertext, new AES128CBC(new Key(key), iv).encryptor())) {
+            out.write(plaintext, 0, 10);
+            out.write(plaintext[10]);
+            out.write(plaintext, 11, plaintext.length - 11);
+        }
+        byte[] expected = new AES128CBC(new Key(key), iv).encryptor().update(plaintext, 0, plaintext.length);
+        assertArrayEquals(expected, Arrays.copyOf(ciphertext.toByteArray(), expected.length));
+
+        try (InputStream in = new CipherInputStream(new ByteArrayInputStream(ciphertext.toByteArray()),
+                                                    new AES128CBC(new Key(key), iv).decryptor())) {
+            assertArrayEquals(plaintext, in.readAllBytes());
+        }
+    }
+
+    @Test
+    void truncatedCiphertextGivesIOException() throws Exception {
+        byte[] ciphertext = new AES128CBC(new Key(key), iv).encrypt(new byte[32]);
+        InputStream in = new CipherInputStream(new ByteArrayInputStream(ciphertext, 0, 31),
+                                               new AES128CBC(new Key(key), iv).decryptor());
+        assertThrows(IOException.class, in::readAllBytes);
+    }
+}
@@ -0,0 +1,80 @@
+package qconf.ciphers.aes128;
+
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.util.HexFormat;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class IncrementalCipherTest {
+
+    private static final byte[] key = HexFormat.of().parseHex("2b7e151628aed2a6abf7158809cf4f3c");
+    private static final byte[] iv = HexFormat.of().parseHex("0123456789abcdef0123456789abcdef");
+
+    @Test
+    void paddedCBCEncryptionMatchesReferenceImplementation() throws Exception {
+        Cipher reference = Cipher.getInstance("AES/CBC/PKCS5Padding");
+        reference.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"), new IvParameterSpec(iv));
+        IncrementalCipher encryptor = new AES128CBC(new Key(key), iv).encryptor();
+        IncrementalCipher decryptor = new AES128CBC(new Key(key), iv).decryptor();
+
+        Random random = new Random(42);
+        for (int len = 0; len <= 70; len++) {
+            byte[] plaintext = new byte[len];
+            random.nextBytes(plaintext);
+            byte[] expected = reference.doFinal(plaintext);
+            byte[] ciphertext = processInPieces(encryptor, plaintext, random);
+            assertArrayEquals(expected, ciphertext);
+            assertArrayEquals(plaintext, processInPieces(decryptor, ciphertext, random));
+        }
+    }
+
+    @Test
+    void incrementalCTRMatchesOneShotEncryption() throws Exception {
+        byte[] plaintext = new byte[1000];
+        Random random = new Random(42);
+        random.nextBytes(plaintext);
+        BigInteger initialValue = new BigInteger(iv);
+        byte[] expected = new AES128CTR(new Key(key), new AES128CTR.Counter(initialValue)).encrypt(plaintext);
+        IncrementalCipher encryptor = new AES128CTR(new Key(key), new AES128CTR.Counter(initialValue)).encryptor();
+        assertArrayEquals(expected, processInPieces(encryptor, plaintext, random));
+    }
+
+    @Test
+    void invalidPaddingThrowsException() throws Exception {
+        AES128CBC cipher = new AES128CBC(new Key(key), iv);
+        // A block of zeroes is not valid padding
+        byte[] ciphertext = cipher.encrypt(new byte[AES128.BLOCK_SZ]);
+        IncrementalCipher decryptor = cipher.decryptor();
+        decryptor.update(ciphertext, 0, ciphertext.length);
+        assertThrows(AES128BlockMode.InvalidPaddingException.class, decryptor::doFinal);
+    }
+
+    @Test
+    void truncatedCiphertextThrowsException() throws Exception {
+        IncrementalCipher decryptor = new AES128CBC(new Key(key), iv).decryptor();
+        decryptor.update(new byte[20], 0, 20);
+        assertThrows(AES128BlockMode.InvalidInputLengthException.class, decryptor::doFinal);
+        assertThrows(AES128BlockMode.InvalidInputLengthException.class, decryptor::doFinal);
+    }
+
+    /** Run the input through the cipher in pieces of random length */
+    private static byte[] processInPieces(IncrementalCipher cipher, byte[] input, Random random) throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        int i = 0;
+        while (i < input.length) {
+            int len = Math.min(random.nextInt(40), input.length - i);
+            output.write(cipher.update(input, i, len));
+            i += len;
+        }
+        output.write(cipher.doFinal());
+        return output.toByteArray();
+    }
+}
@@ -7,6 +7,7 @@ import java.util.HexFormat;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 class KeyTest {
@@ -46,4 +47,16 @@ class KeyTest {
         for (int i = 0; i < expected.size(); i++)
             assertArrayEquals(expected.get(i), keys.get(i).key);
     }
+
+    @Test
+    void decryptionScheduleReversesEncryptionSchedule() throws Key.InvalidKeyException {
+        Key.Schedule schedule = new Key(HexFormat.of().parseHex("2b7e151628aed2a6abf7158809cf4f3c")).expandSchedule();
+        int words = schedule.encryptionKeys.length;
+        for (int j = 0; j < AES128.NUM_COLS; j++) {
+            assertEquals(schedule.encryptionKeys[words - AES128.NUM_COLS + j], schedule.decryptionKeys[j]);
+            assertEquals(schedule.encryptionKeys[j], schedule.decryptionKeys[words - AES128.NUM_COLS + j]);
+        }
+        // Round 9 of the FIPS 197 appendix A.1 key schedule, with InvMixColumns applied
+        assertEquals(0x0c7b5a63, schedule.decryptionKeys[AES128.NUM_COLS]);
+    }
 }
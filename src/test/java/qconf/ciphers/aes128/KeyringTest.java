@@ -0,0 +1,66 @@
+package qconf.ciphers.aes128;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.HexFormat;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class KeyringTest {
+
+    private static final byte[] plaintext = "Be a happy llama, said the llama".getBytes(StandardCharsets.US_ASCII);
+
+    @Test
+    void tooSmallBudgetThrowsException() {
+        assertThrows(IllegalArgumentException.class, () -> new Keyring(Keyring.BYTES_PER_SCHEDULE - 1));
+    }
+
+    @Test
+    void equalKeyMaterialSharesSchedule() throws Key.InvalidKeyException {
+        Keyring keyring = new Keyring(1 << 20);
+        Key.Schedule first = keyring.schedule(new Key(HexFormat.of().parseHex("2b7e151628aed2a6abf7158809cf4f3c")));
+        Key.Schedule second = keyring.schedule(new Key(HexFormat.of().parseHex("2b7e151628aed2a6abf7158809cf4f3c")));
+        assertSame(first, second);
+        assertEquals(1, keyring.hits());
+        assertEquals(1, keyring.misses());
+        assertEquals(1, keyring.size());
+    }
+
+    @Test
+    void leastRecentlyUsedScheduleIsEvicted() throws Key.InvalidKeyException {
+        Keyring keyring = new Keyring(2 * Keyring.BYTES_PER_SCHEDULE);
+        Key a = new Key(new byte[Key.LENGTH]);
+        Key b = new Key(HexFormat.of().parseHex("000102030405060708090a0b0c0d0e0f"));
+        Key c = new Key(HexFormat.of().parseHex("2b7e151628aed2a6abf7158809cf4f3c"));
+        keyring.ecb(a);
+        keyring.ecb(b);
+        keyring.ecb(a);
+        keyring.ecb(c);
+        assertEquals(1, keyring.evictions());
+        assertEquals(2, keyring.size());
+
+        keyring.ecb(a);
+        keyring.ecb(b);
+        assertEquals(2, keyring.hits());
+        assertEquals(4, keyring.misses());
+    }
+
+    @Test
+    void cipherInstancesMatchDirectlyCreatedCiphers() throws Exception {
+        Keyring keyring = new Keyring(1 << 20);
+        Key key = new Key(HexFormat.of().parseHex("2b7e151628aed2a6abf7158809cf4f3c"));
+        byte[] iv = HexFormat.of().parseHex("0123456789abcdef0123456789abcdef");
+        BigInteger counter = new BigInteger(iv);
+
+        assertArrayEquals(new AES128ECB(key).encrypt(plaintext), keyring.ecb(key).encrypt(plaintext));
+        assertArrayEquals(new AES128CBC(key, iv).encrypt(plaintext), keyring.cbc(key, iv).encrypt(plaintext));
+        assertArrayEquals(new AES128CTR(key, new AES128CTR.Counter(counter)).encrypt(plaintext),
+                          keyring.ctr(key, new AES128CTR.Counter(counter)).encrypt(plaintext));
+        assertEquals(2, keyring.hits());
+    }
+}
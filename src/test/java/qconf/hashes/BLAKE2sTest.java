@@ -0,0 +1,103 @@
+package qconf.hashes;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HexFormat;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BLAKE2sTest {
+
+    private static byte[] range(int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++)
+            bytes[i] = (byte) i;
+        return bytes;
+    }
+
+    @Test
+    public void emptyInputGivesExpectedResult() {
+        String expected = "69217a3079908094e11121d042354a7c1f55b6482ca1a51e1b250dfd1ed0eef9";
+        assertEquals(expected, new BLAKE2s().digest(new byte[0]).asHex());
+    }
+
+    @Test
+    public void oneBlockInputGivesExpectedResult() {
+        // RFC 7693, appendix B
+        String expected = "508c5e8c327c14e2e1a72ba34eeb452f37458b209ed63a294d999b4c86675982";
+        assertEquals(expected, new BLAKE2s().digest("abc".getBytes(StandardCharsets.US_ASCII)).asHex());
+    }
+
+    @Test
+    public void truncatedDigestGivesExpectedResult() {
+        String expected = "68c18b80dd398444aa9fd4272ecfa8e71b31ee8a";
+        assertEquals(expected, new BLAKE2s(20).digest(range(64)).asHex());
+    }
+
+    @Test
+    public void keyedHashingGivesExpectedResult() {
+        String expected = "48a8997da407876b3d79c0d92325ad3b89cbb754d86ab71aee047ad345fd2c49";
+        assertEquals(expected, new BLAKE2s(32, range(32)).digest(new byte[0]).asHex());
+        byte[] key = "secret".getBytes(StandardCharsets.US_ASCII);
+        assertEquals("268b2eee48eb345eae3314a15d1b8a85", new BLAKE2s(16, key).digest(range(100)).asHex());
+    }
+
+    @Test
+    public void invalidParametersThrowException() {
+        assertThrows(IllegalArgumentException.class, () -> new BLAKE2s(0));
+        assertThrows(IllegalArgumentException.class, () -> new BLAKE2s(33));
+        assertThrows(IllegalArgumentException.class, () -> new BLAKE2s(32, new byte[33]));
+    }
+
+    @Test
+    public void incrementalHashingInPartsGivesExpectedResult() {
+        Random random = new Random(42);
+        for (BLAKE2s blake2s : new BLAKE2s[]{new BLAKE2s(), new BLAKE2s(16, range(10))}) {
+            Hasher hasher = blake2s.newHasher();
+            for (int len = 0; len < 300; len++) {
+                byte[] input = new byte[len];
+                random.nextBytes(input);
+                for (int i = 0; i < len; ) {
+                    int n = Math.min(random.nextInt(100), len - i);
+                    hasher.update(input, i, n);
+                    i += n;
+                }
+                assertArrayEquals(blake2s.digest(input).asBytes(), hasher.finish().asBytes());
+            }
+        }
+    }
+
+    @Test
+    public void directBufferInputGivesExpectedResult() {
+        byte[] input = new byte[1000];
+        new Random(42).nextBytes(input);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(input.length).put(input).flip();
+        Hasher hasher = new BLAKE2s().newHasher().update(buffer.slice(0, 64)).update(buffer.slice(64, 936));
+        assertArrayEquals(new BLAKE2s().digest(input).asBytes(), hasher.finish().asBytes());
+    }
+
+    @Test
+    public void exportedStateResumesInNewHasher() {
+        byte[] input = new byte[300];
+        new Random(42).nextBytes(input);
+        for (BLAKE2s blake2s : new BLAKE2s[]{new BLAKE2s(), new BLAKE2s(20)}) {
+            byte[] expected = blake2s.digest(input).asBytes();
+            for (int split = 0; split <= input.length; split++) {
+                byte[] state = blake2s.newHasher().update(input, 0, split).exportState();
+                Hasher resumed = blake2s.newHasher().importState(state).update(input, split, input.length - split);
+                assertArrayEquals(expected, resumed.finish().asBytes());
+            }
+        }
+
+        byte[] state = new BLAKE2s().newHasher().update(input).exportState();
+        assertThrows(IllegalArgumentException.class, () -> new BLAKE2s(20).newHasher().importState(state));
+        Hasher keyed = new BLAKE2s(32, range(10)).newHasher();
+        assertThrows(UnsupportedOperationException.class, keyed::exportState);
+        assertThrows(UnsupportedOperationException.class, () -> keyed.importState(state));
+    }
+}
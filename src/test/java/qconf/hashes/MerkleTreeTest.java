@@ -0,0 +1,73 @@
+package qconf.hashes;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MerkleTreeTest {
+
+    @Test
+    public void rootFollowsRFC9162() throws Exception {
+        byte[] data = "abcdefghij".getBytes();
+        // Three leaves: the tree is split into a complete left subtree of two leaves and a single right leaf
+        byte[] a = sha256(new byte[]{0}, "abcd".getBytes());
+        byte[] b = sha256(new byte[]{0}, "efgh".getBytes());
+        byte[] c = sha256(new byte[]{0}, "ij".getBytes());
+        byte[] expected = sha256(new byte[]{1}, sha256(new byte[]{1}, a, b), c);
+        assertArrayEquals(expected, MerkleTree.of(data, 4).root().asBytes());
+
+        assertArrayEquals(sha256(), MerkleTree.of(new byte[0], 4).root().asBytes());
+    }
+
+    @Test
+    public void proofsVerifyForEveryLeaf() {
+        Random random = new Random(42);
+        for (int leafCount = 1; leafCount <= 33; leafCount++) {
+            byte[] data = new byte[leafCount * 10 - 3];
+            random.nextBytes(data);
+            MerkleTree tree = MerkleTree.of(data, 10);
+            assertEquals(leafCount, tree.leafCount());
+            for (int leaf = 0; leaf < leafCount; leaf++) {
+                byte[] chunk = Arrays.copyOfRange(data, leaf * 10, Math.min(data.length, (leaf + 1) * 10));
+                MerkleTree.InclusionProof proof = tree.proof(leaf);
+                assertTrue(proof.verify(tree.root(), chunk));
+
+                chunk[0] ^= 1;
+                assertFalse(proof.verify(tree.root(), chunk));
+                chunk[0] ^= 1;
+                if (leafCount > 1)
+                    assertFalse(new MerkleTree.InclusionProof((leaf + 1) % leafCount, leafCount, proof.path())
+                                        .verify(tree.root(), chunk));
+            }
+        }
+    }
+
+    @Test
+    public void fileAndArrayGiveSameRoot(@TempDir Path dir) throws Exception {
+        byte[] data = new byte[1_000_003];
+        new Random(42).nextBytes(data);
+        Path file = dir.resolve("data");
+        Files.write(file, data);
+        MerkleTree fromFile = MerkleTree.of(file, 100_000);
+        assertEquals(11, fromFile.leafCount());
+        assertArrayEquals(MerkleTree.of(data, 100_000).root().asBytes(), fromFile.root().asBytes());
+        assertArrayEquals(MerkleTree.of(data, 1000).root().asBytes(), MerkleTree.of(file, 1000).root().asBytes());
+    }
+
+    private static byte[] sha256(byte[]... parts) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        for (byte[] part : parts)
+            digest.update(part);
+        return digest.digest();
+    }
+}
@@ -2,7 +2,10 @@ package qconf.hashes;
 
 import org.junit.jupiter.api.Test;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Random;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -48,4 +51,40 @@ class SHA1Test {
         String actual = new SHA1().digest(input).asHex();
         assertEquals(expected, actual);
     }
+
+    @Test
+    public void incrementalHashingInPartsGivesExpectedResult() throws Exception {
+        MessageDigest reference = MessageDigest.getInstance("SHA-1");
+        Hasher hasher = new SHA1().newHasher();
+        Random random = new Random(42);
+        // The same hasher is reused for every message
+        for (int len = 0; len < 300; len++) {
+            byte[] input = new byte[len];
+            random.nextBytes(input);
+            for (int i = 0; i < len; ) {
+                int n = Math.min(random.nextInt(100), len - i);
+                hasher.update(input, i, n);
+                i += n;
+            }
+            assertArrayEquals(reference.digest(input), hasher.finish().asBytes());
+        }
+    }
+
+    @Test
+    public void directBufferInputGivesExpectedResult() throws Exception {
+        byte[] input = new byte[1000];
+        new Random(42).nextBytes(input);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(input.length).put(input).flip();
+        Hasher hasher = new SHA1().newHasher().update(buffer.slice(0, 10)).update(buffer.slice(10, 990));
+        assertArrayEquals(MessageDigest.getInstance("SHA-1").digest(input), hasher.finish().asBytes());
+    }
+
+    @Test
+    public void exportedStateResumesInNewHasher() throws Exception {
+        byte[] input = new byte[1000];
+        new Random(42).nextBytes(input);
+        byte[] state = new SHA1().newHasher().update(input, 0, 555).exportState();
+        Hasher resumed = new SHA1().newHasher().importState(state).update(input, 555, 445);
+        assertArrayEquals(MessageDigest.getInstance("SHA-1").digest(input), resumed.finish().asBytes());
+    }
 }
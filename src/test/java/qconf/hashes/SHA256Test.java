@@ -2,9 +2,15 @@ package qconf.hashes;
 
 import org.junit.jupiter.api.Test;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 class SHA256Test {
 
@@ -48,4 +54,96 @@ class SHA256Test {
         String actual = new SHA256().digest(input).asHex();
         assertEquals(expected, actual);
     }
+
+    @Test
+    public void incrementalHashingInPartsGivesExpectedResult() throws Exception {
+        MessageDigest reference = MessageDigest.getInstance("SHA-256");
+        Hasher hasher = new SHA256().newHasher();
+        Random random = new Random(42);
+        // The same hasher is reused for every message
+        for (int len = 0; len < 300; len++) {
+            byte[] input = new byte[len];
+            random.nextBytes(input);
+            for (int i = 0; i < len; ) {
+                int n = Math.min(random.nextInt(100), len - i);
+                hasher.update(input, i, n);
+                i += n;
+            }
+            assertArrayEquals(reference.digest(input), hasher.finish().asBytes());
+        }
+    }
+
+    @Test
+    public void directBufferInputGivesExpectedResult() throws Exception {
+        byte[] input = new byte[1000];
+        new Random(42).nextBytes(input);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(input.length).put(input).flip();
+        Hasher hasher = new SHA256().newHasher().update(buffer.slice(0, 10)).update(buffer.slice(10, 990));
+        assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(input), hasher.finish().asBytes());
+    }
+
+    @Test
+    public void digestAllGivesSameResultAsDigest() {
+        Random random = new Random(42);
+        byte[][] inputs = new byte[37][];
+        for (int i = 0; i < inputs.length; i++) {
+            inputs[i] = new byte[random.nextInt(300)];
+            random.nextBytes(inputs[i]);
+        }
+        byte[] digests = new SHA256().digestAll(inputs);
+        for (int i = 0; i < inputs.length; i++)
+            assertArrayEquals(new SHA256().digest(inputs[i]).asBytes(),
+                              Arrays.copyOfRange(digests, i * 32, (i + 1) * 32));
+
+        // The same messages stored in one array, with the output written at an offset
+        byte[] data = new byte[37 * 300];
+        int[] offsets = new int[inputs.length];
+        int[] lengths = new int[inputs.length];
+        for (int i = 0; i < inputs.length; i++) {
+            offsets[i] = i * 300 + 1;
+            lengths[i] = Math.min(inputs[i].length, 299);
+            System.arraycopy(inputs[i], 0, data, offsets[i], lengths[i]);
+        }
+        byte[] output = new byte[3 + inputs.length * 32];
+        new SHA256().digestAll(data, offsets, lengths, output, 3);
+        for (int i = 0; i < inputs.length; i++)
+            assertArrayEquals(new SHA256().digest(Arrays.copyOf(inputs[i], lengths[i])).asBytes(),
+                              Arrays.copyOfRange(output, 3 + i * 32, 3 + (i + 1) * 32));
+    }
+
+    @Test
+    public void copiedHasherContinuesIndependently() {
+        byte[] prefix = "abcdbcdecdefdefgefghfghighijhijkijkljklmklmnlmnomnopnopq".getBytes(StandardCharsets.US_ASCII);
+        Hasher hasher = new SHA256().newHasher().update(prefix, 0, 10);
+        Hasher copy = hasher.copy();
+        hasher.update(prefix, 10, prefix.length - 10);
+        assertEquals("248d6a61d20638b8e5c026930c3e6039a33ce45964ff2167f6ecedd419db06c1", hasher.finish().asHex());
+        assertArrayEquals(new SHA256().digest(Arrays.copyOf(prefix, 10)).asBytes(), copy.finish().asBytes());
+    }
+
+    @Test
+    public void exportedStateResumesInNewHasher() throws Exception {
+        byte[] input = new byte[300];
+        new Random(42).nextBytes(input);
+        byte[] expected = MessageDigest.getInstance("SHA-256").digest(input);
+        for (int split = 0; split <= input.length; split++) {
+            Hasher hasher = new SHA256().newHasher().update(input, 0, split);
+            byte[] state = hasher.exportState();
+            hasher.update(new byte[1]);
+            Hasher resumed = new SHA256().newHasher().importState(state).update(input, split, input.length - split);
+            assertArrayEquals(expected, resumed.finish().asBytes());
+        }
+    }
+
+    @Test
+    public void importingForeignOrMalformedStateFails() {
+        byte[] state = new SHA256().newHasher().update(new byte[70]).exportState();
+        Hasher hasher = new SHA256().newHasher();
+        assertThrows(IllegalArgumentException.class,
+                     () -> hasher.importState(new SHA1().newHasher().update(new byte[70]).exportState()));
+        assertThrows(IllegalArgumentException.class, () -> hasher.importState(Arrays.copyOf(state, state.length - 1)));
+        assertThrows(IllegalArgumentException.class, () -> hasher.importState(Arrays.copyOf(state, state.length + 1)));
+        assertThrows(IllegalArgumentException.class, () -> hasher.importState(new byte[0]));
+        assertThrows(IllegalArgumentException.class, () -> new SHA1().newHasher().importState(state));
+    }
 }
@@ -0,0 +1,51 @@
+package qconf.hashes;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SHA384Test {
+
+    @Test
+    public void emptyInputGivesExpectedResult() {
+        String expected = "38b060a751ac96384cd9327eb1b1e36a21fdb71114be07434c0cc7bf63f6e1da" +
+                          "274edebfe76f65fbd51ad2f14898b95b";
+        assertEquals(expected, new SHA384().digest(new byte[0]).asHex());
+    }
+
+    @Test
+    public void oneBlockInputGivesExpectedResult() {
+        String expected = "cb00753f45a35e8bb5a03d699ac65007272c32ab0eded1631a8b605a43ff5bed" +
+                          "8086072ba1e7cc2358baeca134c825a7";
+        assertEquals(expected, new SHA384().digest("abc".getBytes(StandardCharsets.US_ASCII)).asHex());
+    }
+
+    @Test
+    public void incrementalHashingInPartsGivesExpectedResult() throws Exception {
+        MessageDigest reference = MessageDigest.getInstance("SHA-384");
+        Hasher hasher = new SHA384().newHasher();
+        Random random = new Random(42);
+        for (int len = 0; len < 300; len++) {
+            byte[] input = new byte[len];
+            random.nextBytes(input);
+            for (int i = 0; i < len; ) {
+                int n = Math.min(random.nextInt(200), len - i);
+                hasher.update(input, i, n);
+                i += n;
+            }
+            assertArrayEquals(reference.digest(input), hasher.finish().asBytes());
+        }
+    }
+
+    @Test
+    public void cannotRestoreFromSHA512Hasher() {
+        Hasher sha512 = new SHA512().newHasher();
+        assertThrows(IllegalArgumentException.class, () -> new SHA384().newHasher().restore(sha512));
+    }
+}
@@ -0,0 +1,81 @@
+package qconf.hashes;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SHA512Test {
+
+    @Test
+    public void emptyInputGivesExpectedResult() {
+        String expected = "cf83e1357eefb8bdf1542850d66d8007d620e4050b5715dc83f4a921d36ce9ce" +
+                          "47d0d13c5d85f2b0ff8318d2877eec2f63b931bd47417a81a538327af927da3e";
+        assertEquals(expected, new SHA512().digest(new byte[0]).asHex());
+    }
+
+    @Test
+    public void oneBlockInputGivesExpectedResult() {
+        String expected = "ddaf35a193617abacc417349ae20413112e6fa4e89a97ea20a9eeee64b55d39a" +
+                          "2192992a274fc1a836ba3c23a3feebbd454d4423643ce80e2a9ac94fa54ca49f";
+        assertEquals(expected, new SHA512().digest("abc".getBytes(StandardCharsets.US_ASCII)).asHex());
+    }
+
+    @Test
+    public void inputsAroundTheBlockBoundariesGiveExpectedResult() throws Exception {
+        MessageDigest reference = MessageDigest.getInstance("SHA-512");
+        Random random = new Random(42);
+        // The length field no longer fits in the final block from 112 bytes
+        for (int len = 100; len <= 260; len++) {
+            byte[] input = new byte[len];
+            random.nextBytes(input);
+            assertArrayEquals(reference.digest(input), new SHA512().digest(input).asBytes());
+        }
+    }
+
+    @Test
+    public void incrementalHashingInPartsGivesExpectedResult() throws Exception {
+        MessageDigest reference = MessageDigest.getInstance("SHA-512");
+        Hasher hasher = new SHA512().newHasher();
+        Random random = new Random(42);
+        for (int len = 0; len < 300; len++) {
+            byte[] input = new byte[len];
+            random.nextBytes(input);
+            for (int i = 0; i < len; ) {
+                int n = Math.min(random.nextInt(200), len - i);
+                hasher.update(input, i, n);
+                i += n;
+            }
+            assertArrayEquals(reference.digest(input), hasher.finish().asBytes());
+        }
+    }
+
+    @Test
+    public void directBufferInputGivesExpectedResult() throws Exception {
+        byte[] input = new byte[1000];
+        new Random(42).nextBytes(input);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(input.length).put(input).flip();
+        Hasher hasher = new SHA512().newHasher().update(buffer.slice(0, 10)).update(buffer.slice(10, 990));
+        assertArrayEquals(MessageDigest.getInstance("SHA-512").digest(input), hasher.finish().asBytes());
+    }
+
+    @Test
+    public void exportedStateResumesInNewHasher() throws Exception {
+        byte[] input = new byte[300];
+        new Random(42).nextBytes(input);
+        byte[] expected = MessageDigest.getInstance("SHA-512").digest(input);
+        for (int split = 0; split <= input.length; split++) {
+            byte[] state = new SHA512().newHasher().update(input, 0, split).exportState();
+            Hasher resumed = new SHA512().newHasher().importState(state).update(input, split, input.length - split);
+            assertArrayEquals(expected, resumed.finish().asBytes());
+        }
+        byte[] state = new SHA512().newHasher().update(input).exportState();
+        assertThrows(IllegalArgumentException.class, () -> new SHA384().newHasher().importState(state));
+    }
+}
@@ -0,0 +1,176 @@
+package qconf.jfr;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import qconf.ciphers.aes128.AES128CBC;
+import qconf.ciphers.aes128.AES128CTR;
+import qconf.ciphers.aes128.AES128ECB;
+import qconf.ciphers.aes128.Key;
+import qconf.hashes.Hasher;
+import qconf.hashes.MerkleTree;
+import qconf.hashes.SHA256;
+import qconf.kdf.PBKDF2;
+import qconf.mac.HMAC;
+
+import java.math.BigInteger;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OperationEventsTest {
+
+    @TempDir
+    Path dir;
+
+    /** All events of this library. A new recording enables events by default, so the others must be disabled. */
+    private static final List<String> EVENT_NAMES = List.of("qconf.CipherOperation", "qconf.HashOperation",
+                                                            "qconf.MacOperation", "qconf.Throughput");
+
+    private List<RecordedEvent> record(String eventName, Runnable operations) throws Exception {
+        Path file = dir.resolve("recording.jfr");
+        try (Recording recording = new Recording()) {
+            for (String name : EVENT_NAMES)
+                recording.disable(name);
+            recording.enable(eventName).withThreshold(Duration.ZERO);
+            recording.start();
+            operations.run();
+            recording.stop();
+            recording.dump(file);
+        }
+        return RecordingFile.readAllEvents(file);
+    }
+
+    @Test
+    void cipherOperationsAreRecorded() throws Exception {
+        Key key = new Key(HexFormat.of().parseHex("2b7e151628aed2a6abf7158809cf4f3c"));
+        AES128CBC cipher = new AES128CBC(key, new byte[16]);
+        List<RecordedEvent> events = record("qconf.CipherOperation", () -> {
+            try {
+                cipher.decrypt(cipher.encrypt(new byte[96]));
+            } catch (Exception e) {
+                throw new AssertionError(e);
+            }
+        });
+
+        assertEquals(2, events.size());
+        for (RecordedEvent event : events) {
+            assertEquals("AES-128", event.getString("algorithm"));
+            assertEquals("CBC", event.getString("mode"));
+        }
+        assertEquals("encrypt", events.get(0).getString("operation"));
+        assertEquals(96, events.get(0).getLong("bytes"));
+        assertEquals("decrypt", events.get(1).getString("operation"));
+        assertEquals(96, events.get(1).getLong("bytes"));
+    }
+
+    @Test
+    void parallelCipherOperationsAreRecorded() throws Exception {
+        Key key = new Key(HexFormat.of().parseHex("2b7e151628aed2a6abf7158809cf4f3c"));
+        AES128ECB ecb = new AES128ECB(key);
+        AES128CBC cbc = new AES128CBC(key, new byte[16]);
+        AES128CTR ctr = new AES128CTR(key, new AES128CTR.Counter(BigInteger.ONE));
+        byte[] input = new byte[200 * 1024];
+        List<RecordedEvent> events = record("qconf.CipherOperation", () -> {
+            try {
+                ecb.decryptParallel(ecb.encryptParallel(input));
+                cbc.decryptParallel(input);
+                ctr.encryptParallel(input);
+                ctr.decryptParallel(input);
+            } catch (Exception e) {
+                throw new AssertionError(e);
+            }
+        });
+
+        assertEquals(5, events.size());
+        String[][] expected = {{"ECB", "encrypt"}, {"ECB", "decrypt"}, {"CBC", "decrypt"}, {"CTR", "encrypt"},
+                               {"CTR", "decrypt"}};
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i][0], events.get(i).getString("mode"));
+            assertEquals(expected[i][1], events.get(i).getString("operation"));
+            assertEquals(input.length, events.get(i).getLong("bytes"));
+        }
+    }
+
+    @Test
+    void batchHashIsRecordedAsOneOperation() throws Exception {
+        List<RecordedEvent> events = record("qconf.HashOperation", () -> {
+            new SHA256().digestAll(new byte[][]{new byte[10], new byte[100], new byte[1000]});
+            new SHA256().digestAll(new byte[][]{new byte[10]});
+        });
+
+        assertEquals(2, events.size());
+        assertEquals("SHA-256", events.get(0).getString("algorithm"));
+        assertEquals(1110, events.get(0).getLong("bytes"));
+        assertEquals(10, events.get(1).getLong("bytes"));
+    }
+
+    @Test
+    void merkleTreeIsRecordedAsOneOperation() throws Exception {
+        byte[] data = new byte[5000];
+        List<RecordedEvent> events = record("qconf.HashOperation", () -> {
+            MerkleTree tree = MerkleTree.of(data, 100);
+            tree.proof(7).verify(tree.root(), new byte[100]);
+        });
+
+        assertEquals(1, events.size());
+        assertEquals("Merkle-SHA-256", events.get(0).getString("algorithm"));
+        assertEquals(5000, events.get(0).getLong("bytes"));
+    }
+
+    @Test
+    void incrementalHashIsRecordedAsOneOperation() throws Exception {
+        List<RecordedEvent> events = record("qconf.HashOperation", () -> {
+            Hasher hasher = new SHA256().newHasher();
+            hasher.update(new byte[10]).update(new byte[100]).finish();
+        });
+
+        assertEquals(1, events.size());
+        assertEquals("SHA-256", events.get(0).getString("algorithm"));
+        assertEquals(110, events.get(0).getLong("bytes"));
+    }
+
+    @Test
+    void keyedAndIncrementalMacsAreRecorded() throws Exception {
+        HMAC.Keyed keyed = new HMAC<>(SHA256::new).withKey(new byte[32]);
+        List<RecordedEvent> events = record("qconf.MacOperation", () -> {
+            keyed.digest(new byte[50]);
+            keyed.newHasher().update(new byte[20]).update(new byte[30]).finish();
+        });
+
+        assertEquals(2, events.size());
+        for (RecordedEvent event : events) {
+            assertEquals("HMAC-SHA256", event.getString("algorithm"));
+            assertEquals(50, event.getLong("bytes"));
+        }
+    }
+
+    @Test
+    void internalHashesOfMacsAreNotRecorded() throws Exception {
+        HMAC.Keyed keyed = new HMAC<>(SHA256::new).withKey(new byte[100]);
+        PBKDF2<SHA256> pbkdf2 = new PBKDF2<>(SHA256::new);
+        Runnable operations = () -> {
+            keyed.digest(new byte[50]);
+            keyed.newHasher().update(new byte[50]).finish();
+            pbkdf2.deriveKey(new byte[10], new byte[16], 100, 40);
+        };
+
+        assertTrue(record("qconf.HashOperation", operations).isEmpty());
+        List<RecordedEvent> events = record("qconf.MacOperation", operations);
+        assertEquals(3, events.size());
+        assertEquals("PBKDF2-HMAC-SHA256", events.get(2).getString("algorithm"));
+        assertEquals(40, events.get(2).getLong("bytes"));
+    }
+
+    @Test
+    void disabledEventsAreNotRecorded() throws Exception {
+        List<RecordedEvent> events = record("qconf.MacOperation", () -> new SHA256().digest(new byte[10]));
+        assertTrue(events.stream().noneMatch(e -> e.getEventType().getName().startsWith("qconf.")));
+    }
+}
@@ -0,0 +1,63 @@
+package qconf.kdf;
+
+import org.junit.jupiter.api.Test;
+import qconf.hashes.SHA1;
+import qconf.hashes.SHA256;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.HexFormat;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PBKDF2Test {
+
+    private static final PBKDF2<SHA1> pbkdf2Sha1 = new PBKDF2<>(SHA1::new);
+
+    @Test
+    void PBKDF2SHA1GivesExpectedResults() {
+        // Test vectors from RFC 6070
+        byte[] password = "password".getBytes(StandardCharsets.US_ASCII);
+        byte[] salt = "salt".getBytes(StandardCharsets.US_ASCII);
+        assertEquals("0c60c80f961f0e71f3a9b524af6012062fe037a6", hex(pbkdf2Sha1.deriveKey(password, salt, 1, 20)));
+        assertEquals("ea6c014dc72d6f8ccd1ed92ace1d41f0d8de8957", hex(pbkdf2Sha1.deriveKey(password, salt, 2, 20)));
+        assertEquals("4b007901b765489abead49d926f721d065a429c1", hex(pbkdf2Sha1.deriveKey(password, salt, 4096, 20)));
+    }
+
+    @Test
+    void PBKDF2SHA1WithKeyLongerThanDigestGivesExpectedResult() {
+        byte[] password = "passwordPASSWORDpassword".getBytes(StandardCharsets.US_ASCII);
+        byte[] salt = "saltSALTsaltSALTsaltSALTsaltSALTsalt".getBytes(StandardCharsets.US_ASCII);
+        assertEquals("3d2eec4fe41c849b80c8d83662c0e44a8b291a964cf2f07038",
+                     hex(pbkdf2Sha1.deriveKey(password, salt, 4096, 25)));
+        assertEquals("56fa6aa75548099dcc37d7f03425e0c3",
+                     hex(pbkdf2Sha1.deriveKey("pass\0word".getBytes(StandardCharsets.US_ASCII),
+                                              "sa\0lt".getBytes(StandardCharsets.US_ASCII), 4096, 16)));
+    }
+
+    @Test
+    void PBKDF2SHA256MatchesReferenceImplementation() throws Exception {
+        String password = "correct horse battery staple";
+        byte[] salt = HexFormat.of().parseHex("000102030405060708090a0b0c0d0e0f");
+        // 100 bytes is more than three SHA-256 blocks, so the blocks are derived in parallel
+        byte[] expected = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256")
+                                          .generateSecret(new PBEKeySpec(password.toCharArray(), salt, 1000, 800))
+                                          .getEncoded();
+        byte[] actual = new PBKDF2<>(SHA256::new).deriveKey(password.getBytes(StandardCharsets.US_ASCII), salt,
+                                                            1000, 100);
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    void invalidParametersThrowException() {
+        assertThrows(IllegalArgumentException.class, () -> pbkdf2Sha1.deriveKey(new byte[1], new byte[1], 0, 20));
+        assertThrows(IllegalArgumentException.class, () -> pbkdf2Sha1.deriveKey(new byte[1], new byte[1], 1, 0));
+    }
+
+    private static String hex(byte[] bytes) {
+        return HexFormat.of().formatHex(bytes);
+    }
+}
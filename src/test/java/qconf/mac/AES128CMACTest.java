@@ -0,0 +1,70 @@
+package qconf.mac;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import qconf.ciphers.aes128.Key;
+import qconf.hashes.Hasher;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AES128CMACTest {
+
+    // Examples from RFC 4493, section 4
+    private static final byte[] message = HexFormat.of().parseHex(
+            "6bc1bee22e409f96e93d7e117393172aae2d8a571e03ac9c9eb76fac45af8e5130c81c46a35ce411e5fbc1191a0a52ef" +
+            "f69f2445df4f9b17ad2b417be66c3710");
+
+    private static AES128CMAC cmac;
+
+    @BeforeAll
+    static void setUp() throws Key.InvalidKeyException {
+        cmac = new AES128CMAC(new Key(HexFormat.of().parseHex("2b7e151628aed2a6abf7158809cf4f3c")));
+    }
+
+    @Test
+    void CMACGivesExpectedResult() {
+        assertEquals("bb1d6929e95937287fa37d129b756746", cmac.digest(new byte[0]).asHex());
+        assertEquals("070a16b46b4d4144f79bdd9dd04a287c", cmac.digest(message, 0, 16).asHex());
+        assertEquals("dfa66747de9ae63030ca32611497c827", cmac.digest(message, 0, 40).asHex());
+        assertEquals("51f0bebf7e3b9d92fc49741779363cfe", cmac.digest(message).asHex());
+    }
+
+    @Test
+    void incrementalCMACInPartsGivesSameResult() {
+        Hasher hasher = cmac.newHasher();
+        for (int length = 0; length <= message.length; length++) {
+            for (int split = 0; split <= length; split++) {
+                hasher.update(message, 0, split);
+                Hasher copy = hasher.copy();
+                hasher.update(message, split, length - split);
+                copy.update(ByteBuffer.allocateDirect(length - split).put(message, split, length - split).flip());
+                byte[] expected = cmac.digest(message, 0, length).asBytes();
+                assertArrayEquals(expected, hasher.finish().asBytes());
+                assertArrayEquals(expected, copy.finish().asBytes());
+            }
+        }
+    }
+
+    @Test
+    void macAllMatchesIndividualMACs() {
+        Random random = new Random(42);
+        byte[][] inputs = new byte[100][];
+        for (int i = 0; i < inputs.length; i++) {
+            inputs[i] = new byte[random.nextInt(300)];
+            random.nextBytes(inputs[i]);
+        }
+        inputs[17] = new byte[0];
+        inputs[18] = new byte[32];
+
+        byte[] macs = cmac.macAll(inputs);
+        assertEquals(16 * inputs.length, macs.length);
+        for (int i = 0; i < inputs.length; i++)
+            assertArrayEquals(cmac.digest(inputs[i]).asBytes(), Arrays.copyOfRange(macs, 16 * i, 16 * (i + 1)));
+    }
+}
@@ -2,12 +2,24 @@ package qconf.mac;
 
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
+import qconf.hashes.Hasher;
 import qconf.hashes.SHA256;
+import qconf.hashes.SHA512;
 
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 class HMACTest {
 
@@ -65,4 +77,75 @@ class HMACTest {
         String expected = "9b09ffa71b942fcb27635fbcd5b0e944bfdc63644f0713938a7f51535c3a35e2";
         assertEquals(expected, hmacSha256.digest(key, data).asHex());
     }
+
+    @Test
+    void keyedHMACGivesSameResultAsDigestForAnyMessage() throws Exception {
+        byte[] key = "Jefe".getBytes(StandardCharsets.US_ASCII);
+        HMAC.Keyed keyed = hmacSha256.withKey(key);
+        Mac reference = Mac.getInstance("HmacSHA256");
+        reference.init(new SecretKeySpec(key, "HmacSHA256"));
+        Random random = new Random(42);
+        for (int len = 0; len < 200; len++) {
+            byte[] data = new byte[len];
+            random.nextBytes(data);
+            assertArrayEquals(reference.doFinal(data), keyed.digest(data).asBytes());
+            assertArrayEquals(hmacSha256.digest(key, data).asBytes(), keyed.digest(data).asBytes());
+        }
+    }
+
+    @Test
+    void keyedHMACHasherCanBeReusedForSeveralMessages() {
+        byte[] key = "Jefe".getBytes(StandardCharsets.US_ASCII);
+        byte[] data = "what do ya want for nothing?".getBytes(StandardCharsets.US_ASCII);
+        String expected = "5bdcc146bf60754e6a042426089575c75a003f089d2739839dec58b964ec3843";
+        Hasher hasher = hmacSha256.withKey(key).newHasher();
+        for (int i = 0; i < 3; i++) {
+            hasher.update(data, 0, 10).update(data, 10, data.length - 10);
+            assertEquals(expected, hasher.finish().asHex());
+        }
+    }
+
+    @Test
+    void keyedHMACGivesCorrectResultsWhenSharedBetweenThreads() throws Exception {
+        byte[] key = "Jefe".getBytes(StandardCharsets.US_ASCII);
+        byte[] data = "what do ya want for nothing?".getBytes(StandardCharsets.US_ASCII);
+        String expected = "5bdcc146bf60754e6a042426089575c75a003f089d2739839dec58b964ec3843";
+        HMAC.Keyed keyed = hmacSha256.withKey(key);
+        assertThrows(IndexOutOfBoundsException.class, () -> keyed.digest(data, 10, data.length));
+        assertEquals(expected, keyed.digest(data).asHex());
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> tasks = new ArrayList<>();
+            for (int t = 0; t < 32; t++) {
+                tasks.add(executor.submit(() -> {
+                    for (int i = 0; i < 200; i++)
+                        assertEquals(expected, keyed.digest(data).asHex());
+                    return null;
+                }));
+            }
+            for (Future<?> task : tasks)
+                task.get();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void HMACSHA512GivesSameResultAsJavaxCrypto() throws Exception {
+        HMAC<SHA512> hmacSha512 = new HMAC<>(SHA512::new);
+        Mac reference = Mac.getInstance("HmacSHA512");
+        Random random = new Random(42);
+        // Keys both shorter and longer than the 128 byte block size
+        for (int keyLength : new int[]{4, 64, 128, 131}) {
+            byte[] key = new byte[keyLength];
+            random.nextBytes(key);
+            reference.init(new SecretKeySpec(key, "HmacSHA512"));
+            for (int len = 0; len < 300; len += 37) {
+                byte[] data = new byte[len];
+                random.nextBytes(data);
+                assertArrayEquals(reference.doFinal(data), hmacSha512.digest(key, data).asBytes());
+            }
+        }
+    }
 }
@@ -0,0 +1,36 @@
+package qconf.ciphers.aes128;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Implementation of {@link AES128#xor} using the (incubating) Vector API. This class is only compiled with the
+ * vector profile, and is loaded by {@link AES128} when the jdk.incubator.vector module is available at runtime.
+ *
+ * @author Gabriel Skoglund
+ */
+final class VectorXor implements AES128.XorKernel {
+
+    /** The widest vectors supported by the CPU, used for bulk input */
+    private static final VectorSpecies<Byte> PREFERRED = ByteVector.SPECIES_PREFERRED;
+
+    /** Vectors of a single AES block, used for the remaining whole blocks */
+    private static final VectorSpecies<Byte> BLOCK = ByteVector.SPECIES_128;
+
+    @Override
+    public void xor(byte[] a, int aOff, byte[] b, int bOff, byte[] out, int outOff, int len) {
+        int i = 0;
+        for (int bound = PREFERRED.loopBound(len); i < bound; i += PREFERRED.length()) {
+            ByteVector x = ByteVector.fromArray(PREFERRED, a, aOff + i);
+            ByteVector y = ByteVector.fromArray(PREFERRED, b, bOff + i);
+            x.lanewise(VectorOperators.XOR, y).intoArray(out, outOff + i);
+        }
+        for (int bound = BLOCK.loopBound(len); i < bound; i += BLOCK.length()) {
+            ByteVector x = ByteVector.fromArray(BLOCK, a, aOff + i);
+            ByteVector y = ByteVector.fromArray(BLOCK, b, bOff + i);
+            x.lanewise(VectorOperators.XOR, y).intoArray(out, outOff + i);
+        }
+        AES128.xorScalar(a, aOff + i, b, bOff + i, out, outOff + i, len - i);
+    }
+}